@@ -0,0 +1,112 @@
+package com.kanzhun.resformat;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Generated stand-ins for the files a ReplaceResName run reads. Fixed seeds,
+ * so every run and every machine scores the same bytes.
+ */
+public enum DetectionCorpus {
+
+	/** Plain Java source, ASCII only, ~8 KiB */
+	ASCII_JAVA {
+		@Override
+		byte[] generate() {
+			return source(8 * 1024, false, "US-ASCII", false);
+		}
+	},
+
+	/** Kotlin source with Chinese comments and strings in UTF-8, ~8 KiB */
+	UTF8_KOTLIN {
+		@Override
+		byte[] generate() {
+			return source(8 * 1024, true, "UTF-8", true);
+		}
+	},
+
+	/** Legacy Java source with Chinese comments in GBK, ~8 KiB */
+	GBK_JAVA {
+		@Override
+		byte[] generate() {
+			return source(8 * 1024, true, "GBK", false);
+		}
+	},
+
+	/** strings.xml with an XML declaration and Chinese values, ~512 KiB */
+	STRINGS_XML {
+		@Override
+		byte[] generate() {
+			return strings(512 * 1024, true);
+		}
+	},
+
+	/** The same strings.xml without the declaration */
+	STRINGS_XML_NO_DECLARATION {
+		@Override
+		byte[] generate() {
+			return strings(512 * 1024, false);
+		}
+	},
+
+	/** A one-line layout or values file */
+	TINY {
+		@Override
+		byte[] generate() {
+			return "<merge xmlns:android=\"http://schemas.android.com/apk/res/android\" />\n"
+					.getBytes(Charset.forName("US-ASCII"));
+		}
+	};
+
+	private static final String[] CHINESE = { "资源文件", "替换前缀", "布局", "点击按钮",
+			"用户信息", "加载中，请稍候", "网络错误", "确定", "取消", "设置" };
+
+	abstract byte[] generate();
+
+	private static byte[] source(int size, boolean chinese, String charset,
+			boolean kotlin) {
+		Random random = new Random(11);
+		StringBuilder sb = new StringBuilder(size + 256);
+		sb.append("package com.example.app\n\n");
+		for (int i = 0; sb.length() < size; i++) {
+			if (chinese && i % 4 == 0) {
+				sb.append("    // ").append(CHINESE[random.nextInt(CHINESE.length)])
+						.append('\n');
+			}
+			if (kotlin) {
+				sb.append("    val view").append(i)
+						.append(" = findViewById<TextView>(R.id.text_").append(i)
+						.append(")\n");
+			} else {
+				sb.append("    TextView view").append(i)
+						.append(" = (TextView) findViewById(R.id.text_").append(i)
+						.append(");\n");
+			}
+			sb.append("    view").append(i).append(".setText(");
+			if (chinese && i % 3 == 0) {
+				sb.append('"').append(CHINESE[random.nextInt(CHINESE.length)])
+						.append('"');
+			} else {
+				sb.append("R.string.label_").append(random.nextInt(1000));
+			}
+			sb.append(kotlin ? ")\n" : ");\n");
+		}
+		return sb.toString().getBytes(Charset.forName(charset));
+	}
+
+	private static byte[] strings(int size, boolean declaration) {
+		Random random = new Random(13);
+		StringBuilder sb = new StringBuilder(size + 256);
+		if (declaration) {
+			sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		}
+		sb.append("<resources>\n");
+		for (int i = 0; sb.length() < size; i++) {
+			sb.append("    <string name=\"module_label_").append(i).append("\">")
+					.append(CHINESE[random.nextInt(CHINESE.length)])
+					.append(i).append("</string>\n");
+		}
+		sb.append("</resources>\n");
+		return sb.toString().getBytes(Charset.forName("UTF-8"));
+	}
+}
@@ -0,0 +1,79 @@
+package com.kanzhun.resformat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of encoding detection over each {@link DetectionCorpus}; run
+ * with -prof gc (the jmh task's default) for the allocation rate.
+ * <ul>
+ * <li>detect: tiered detection of bytes already in memory</li>
+ * <li>detectEncoding: full statistical scoring, what every file used to
+ * cost</li>
+ * <li>detectFile: {@link ReadTextCode#detect(File)} including the read, as
+ * the rename passes call it (no encoding cache)</li>
+ * </ul>
+ * gradlew :ResTools:jmh -PjmhArgs=EncodingDetection
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingDetectionBenchmark {
+
+	@Param({ "ASCII_JAVA", "UTF8_KOTLIN", "GBK_JAVA", "STRINGS_XML",
+			"STRINGS_XML_NO_DECLARATION", "TINY" })
+	public DetectionCorpus corpus;
+
+	private byte[] rawtext;
+
+	private File file;
+
+	private BytesReadTextCode detector;
+
+	@Setup
+	public void setUp() throws IOException {
+		rawtext = corpus.generate();
+		file = File.createTempFile("detection-" + corpus, ".txt");
+		Files.write(file.toPath(), rawtext);
+		detector = new BytesReadTextCode();
+		ReadTextCode.setEncodingCache(null);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public EncodingResult detect() {
+		return detector.detect(rawtext);
+	}
+
+	@Benchmark
+	public int detectEncoding() {
+		return detector.detectEncoding(rawtext);
+	}
+
+	@Benchmark
+	public EncodingResult detectFile() {
+		return ReadTextCode.detect(file);
+	}
+}
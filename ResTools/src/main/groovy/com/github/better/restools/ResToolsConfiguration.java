@@ -1,5 +1,8 @@
 package com.github.better.restools;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class ResToolsConfiguration {
     /**
      * 新的资源前缀
@@ -30,6 +33,54 @@ public class ResToolsConfiguration {
      */
     public String manifestFilePath = "";
 
+    /**
+     * 编码检测时大文件最多读取的开头字节数，再加上均匀分布的几个窗口；
+     * 样本无法确定编码时才会全量读取。0 表示总是全量读取
+     */
+    public int encodingSampleBytes = 64 * 1024;
+
+    /**
+     * 编码检测结果缓存在 build/resTools 下，按路径、大小和修改时间失效；
+     * 为 true 时还会校验文件内容的 CRC32
+     */
+    public boolean encodingCacheVerifyContent = false;
+
+    /**
+     * 代码库实际使用的编码，如 ['UTF-8', 'GBK']，按顺序逐个严格解码校验，第一个能完整解码的即为结果，
+     * 不再对韩文、日文、繁体等编码打分；都无法解码的文件会按原方式检测并在任务结束时列出。
+     * 为空表示检测所有编码
+     */
+    public List<String> encodings = new ArrayList<>();
+
+    /**
+     * NormalizeEncoding 任务是否把非 UTF-8 的源码和资源文件转为 UTF-8；
+     * 为 false 时只检测并记录编码清单，之后的任务直接采用清单中的编码
+     */
+    public boolean normalizeToUtf8 = false;
+
+    /**
+     * 替换资源名时同时处理的文件数(线程数)，0 表示 CPU 核数，1 表示逐个处理。
+     * 出错的文件不会中断其他文件，全部处理完后一起报告
+     */
+    public int parallelism = 0;
+
+    /**
+     * 每个文件用一个虚拟线程处理(需 JDK 21 及以上，否则仍用 parallelism 个线程)，
+     * 适合网络磁盘等每个文件 IO 延迟高、CPU 空闲的情况
+     */
+    public boolean virtualThreads = false;
+
+    /**
+     * 同时打开(处理)的文件数上限，避免耗尽文件描述符，0 表示默认 256
+     */
+    public int maxOpenFiles = 0;
+
+    /**
+     * 增量替换：记录各文件处理后的状态(build/resTools/rename-state.txt)，再次执行时跳过内容没有变、
+     * 也不含新增资源名的文件，只处理新增、修改过的文件和引用了新资源的文件。默认关闭，每次处理所有文件
+     */
+    public boolean incremental = false;
+
 
     public ResToolsConfiguration(String new_prefix, String old_prefix, String srcFolderPath, String resFolderPath, String manifestFilePath) {
         this.new_prefix = new_prefix;
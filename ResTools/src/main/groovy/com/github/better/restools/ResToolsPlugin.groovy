@@ -1,12 +1,28 @@
 package com.github.better.restools
 
 import com.github.better.restools.ResToolsConfiguration
+import com.github.better.restools.engine.FileIoExecutor
+import com.github.better.restools.engine.FileTaskRunner
+import com.github.better.restools.engine.RenameEngine
+import com.github.better.restools.engine.RenameJournal
+import com.github.better.restools.engine.RenamePlan
+import com.github.better.restools.engine.RenameState
 import com.github.better.restools.folder.*
 import com.github.better.restools.values.ValuesReplace
+import com.kanzhun.resformat.CandidateEncodings
+import com.kanzhun.resformat.EncodingCache
+import com.kanzhun.resformat.EncodingManifest
+import com.kanzhun.resformat.EncodingNormalizer
+import com.kanzhun.resformat.ReadTextCode
+import com.kanzhun.resformat.SamplingPolicy
+import groovy.io.FileType
 import org.gradle.api.Plugin
 import org.gradle.api.Project
 import findunusedresources.FindUnusedResources;
 
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
 /**
  * zhaoyu1
  */
@@ -15,6 +31,19 @@ class ResToolsPlugin implements Plugin<Project> {
     static final String APP = "com.android.application"
     static final String LIBRARY = "com.android.library"
 
+    /**
+     * 替换并重命名
+     */
+    private static final String MODE_RUN = "run"
+    /**
+     * 只计算计划
+     */
+    private static final String MODE_PLAN = "plan"
+    /**
+     * 执行计划
+     */
+    private static final String MODE_APPLY = "apply"
+
     @Override
     void apply(Project project) {
         println("hello world 1 " + project.name)
@@ -32,14 +61,42 @@ class ResToolsPlugin implements Plugin<Project> {
         // === Create Task
         project.tasks.create(["name": "ReplaceResName", "group": "resourceTools"]) {
             doLast {
-                println("hello world 3 " + project.name)
-                if (!project.android) {
-                    throw new IllegalStateException('Must apply \'com.android.application\' or \'com.android.library\' first!')
+                replaceResName(project, MODE_RUN)
+            }
+        }
+
+        // === Create Task: 只计算要修改的文件和重命名，写入计划文件，不修改文件
+        project.tasks.create(["name": "PlanResName", "group": "resourceTools"]) {
+            doLast {
+                replaceResName(project, MODE_PLAN)
+            }
+        }
+
+        // === Create Task: 执行 PlanResName 的计划，只处理其中列出的文件
+        project.tasks.create(["name": "ApplyResName", "group": "resourceTools"]) {
+            doLast {
+                replaceResName(project, MODE_APPLY)
+            }
+        }
+
+        // === Create Task: 按 ReplaceResName 的预写日志恢复所有修改过的文件和重命名
+        project.tasks.create(["name": "RollbackResName", "group": "resourceTools"]) {
+            doLast {
+                File dir = renameJournalDir(project)
+                String result = RenameJournal.rollback(dir)
+                if (result == null) {
+                    println(">>>>>> no rename journal in ${dir}, nothing to roll back")
+                } else {
+                    println(">>>>>> rollback: ${result}")
                 }
+            }
+        }
 
-                if (project.resConfig == null) {       // check config
-                    throw new IllegalArgumentException(
-                            'ResTools gradle plugin "resConfig DSL" config can not be null.')
+        // === Create Task: 一次性检测(并可转为 UTF-8)所有源码和资源文件的编码，结果写入编码清单
+        project.tasks.create(["name": "NormalizeEncoding", "group": "resourceTools"]) {
+            doLast {
+                if (!project.android) {
+                    throw new IllegalStateException('Must apply \'com.android.application\' or \'com.android.library\' first!')
                 }
 
                 // === System default
@@ -47,14 +104,8 @@ class ResToolsPlugin implements Plugin<Project> {
                 String resFolder = project.android.sourceSets.main.res.srcDirs[0].getAbsolutePath()
                 String manifestFilePath = project.android.sourceSets.main.manifest.srcFile.getAbsolutePath()
 
-                long startTime = System.currentTimeMillis()     // startTime
-
                 // === User settings
                 def config = project.resConfig
-                if (config.new_prefix == null || config.new_prefix.trim().length() == 0) {
-                    throw new IllegalArgumentException(
-                            'the [new_prefix] can not be null (必须配置新的前缀)')
-                }
                 if (config.srcFolderPath != null && config.srcFolderPath.trim().length() > 0) {
                     sourceFolder = config.srcFolderPath
                 }
@@ -65,27 +116,45 @@ class ResToolsPlugin implements Plugin<Project> {
                     manifestFilePath = config.manifestFilePath
                 }
 
-                // === print all settings
-
-                println(">>>>>> old_prefix: ${config.old_prefix}")
-                println(">>>>>> new_prefix: ${config.new_prefix}")
-                println(">>>>>> srcFolder : ${sourceFolder}")
-                println(">>>>>> resFolder : ${resFolder}")
-                println(">>>>>> AndroidManifest.xml file path : ${manifestFilePath}")
+                List<File> files = []
+                [new File(sourceFolder), new File(resFolder)].each { dir ->
+                    if (dir.isDirectory()) {
+                        dir.eachFileRecurse(FileType.FILES) { file ->
+                            if (file.name.endsWith(".java") || file.name.endsWith(".kt") || file.name.endsWith(".xml")) {
+                                files << file
+                            }
+                        }
+                    }
+                }
+                if (new File(manifestFilePath).isFile()) {
+                    files << new File(manifestFilePath)
+                }
 
-                // === do work
-                println "++++++++++++++++++++++ Start replace Android resources..."
-
-                ResToolsConfiguration workConfig = new ResToolsConfiguration(
-                        config.new_prefix,
-                        config.old_prefix,
-                        sourceFolder,
-                        resFolder,
-                        manifestFilePath
-                )
-                doWork(workConfig)
-
-                println("++++++++++++++++++++++ Finish replace resouces name, Total time: ${(System.currentTimeMillis() - startTime) / 1000} ")
+                println(">>>>>> normalize ${files.size()} files, to UTF-8: ${config.normalizeToUtf8}")
+                ReadTextCode.setSamplingPolicy(SamplingPolicy.ofPrefix(config.encodingSampleBytes))
+                ReadTextCode.setCandidateEncodings(CandidateEncodings.of(config.encodings))
+                EncodingManifest manifest = EncodingManifest.open(encodingManifestFile(project))
+                ReadTextCode.setEncodingManifest(manifest)
+                ReadTextCode.resetTierCounts()
+                long start = System.currentTimeMillis()
+                ExecutorService pool = Executors.newFixedThreadPool(Runtime.runtime.availableProcessors())
+                EncodingNormalizer.Summary summary
+                Throwable failure = null
+                try {
+                    summary = EncodingNormalizer.normalize(files, config.normalizeToUtf8, manifest, pool)
+                } catch (Throwable e) {
+                    failure = e
+                    throw e
+                } finally {
+                    pool.shutdownNow()
+                    ReadTextCode.setEncodingManifest(null)
+                    cleanUp(failure, [{ manifest.save() }])
+                }
+                println(">>>>>> ${summary} in ${System.currentTimeMillis() - start} ms")
+                println(">>>>>> encoding detection tiers: ${ReadTextCode.getTierCounts()}")
+                summary.transcoded.each { println("    UTF-8 <- ${it}") }
+                summary.problems.each { file, reason -> println(">>>>>> WARNING: ${file}: ${reason}") }
+                println(">>>>>> encoding manifest : ${manifest}")
             }
         }
 
@@ -142,49 +211,244 @@ class ResToolsPlugin implements Plugin<Project> {
                 args[2] = "2"//ACTION_DELETE
                 args[3] = "noprompt"
                 println "++++++++++++++++++++++ Start FindUnusedResourcesPlugin.." + args[0]
-                FindUnusedResources.main(args)
+                def config = project.resConfig
+                // 与 ReplaceResName 共用编码缓存，NormalizeEncoding 记录的编码直接采用
+                openEncodings(project, config)
+                // 搜索引用时各文件的读取和匹配，执行方式同 ReplaceResName
+                FileIoExecutor executor = FileIoExecutor.create(config.virtualThreads, config.parallelism, config.maxOpenFiles)
+                Throwable failure = null
+                try {
+                    FindUnusedResources.run(args, executor)
+                } catch (Throwable e) {
+                    failure = e
+                    throw e
+                } finally {
+                    executor.shutdown()
+                    EncodingCache cache = ReadTextCode.getEncodingCache()
+                    EncodingManifest manifest = ReadTextCode.getEncodingManifest()
+                    ReadTextCode.setEncodingCache(null)
+                    ReadTextCode.setEncodingManifest(null)
+                    cleanUp(failure, [{ cache.save() }, { manifest.save() }])
+                }
+            }
+        }
+    }
+
+    /**
+     * ReplaceResName 的预写日志和备份，RollbackResName 据此回滚
+     */
+    private static File renameJournalDir(Project project) {
+        return new File(project.buildDir, "resTools/rename-journal")
+    }
+
+    /**
+     * PlanResName 写、ApplyResName 读的替换计划
+     */
+    private static File renamePlanFile(Project project) {
+        return new File(project.buildDir, "resTools/rename-plan.txt")
+    }
+
+    /**
+     * ReplaceResName、ApplyResName 记录的各文件处理后的状态
+     */
+    private static File renameStateFile(Project project) {
+        return new File(project.buildDir, "resTools/rename-state.txt")
+    }
+
+    /**
+     * NormalizeEncoding 任务写、ReplaceResName 读的编码清单
+     */
+    private static File encodingManifestFile(Project project) {
+        return new File(project.buildDir, "resTools/encoding-manifest.txt")
+    }
+
+    /**
+     * ReplaceResName、PlanResName、ApplyResName 共用
+     * @param mode MODE_RUN、MODE_PLAN 或 MODE_APPLY
+     */
+    private static void replaceResName(Project project, String mode) {
+        println("hello world 3 " + project.name)
+        if (!project.android) {
+            throw new IllegalStateException('Must apply \'com.android.application\' or \'com.android.library\' first!')
+        }
+
+        if (project.resConfig == null) {       // check config
+            throw new IllegalArgumentException(
+                    'ResTools gradle plugin "resConfig DSL" config can not be null.')
+        }
+
+        // === System default
+        String sourceFolder = project.android.sourceSets.main.java.srcDirs[0].getAbsolutePath()
+        String resFolder = project.android.sourceSets.main.res.srcDirs[0].getAbsolutePath()
+        String manifestFilePath = project.android.sourceSets.main.manifest.srcFile.getAbsolutePath()
+
+        long startTime = System.currentTimeMillis()     // startTime
+
+        // === User settings
+        def config = project.resConfig
+        if (config.new_prefix == null || config.new_prefix.trim().length() == 0) {
+            throw new IllegalArgumentException(
+                    'the [new_prefix] can not be null (必须配置新的前缀)')
+        }
+        if (config.srcFolderPath != null && config.srcFolderPath.trim().length() > 0) {
+            sourceFolder = config.srcFolderPath
+        }
+        if (config.resFolderPath != null && config.resFolderPath.trim().length() > 0) {
+            resFolder = config.resFolderPath
+        }
+        if (config.manifestFilePath != null && config.manifestFilePath.trim().length() > 0) {
+            manifestFilePath = config.manifestFilePath
+        }
+
+        // === print all settings
+
+        println(">>>>>> old_prefix: ${config.old_prefix}")
+        println(">>>>>> new_prefix: ${config.new_prefix}")
+        println(">>>>>> srcFolder : ${sourceFolder}")
+        println(">>>>>> resFolder : ${resFolder}")
+        println(">>>>>> AndroidManifest.xml file path : ${manifestFilePath}")
+
+        CandidateEncodings candidates = openEncodings(project, config)
+
+        // === do work
+        println "++++++++++++++++++++++ Start replace Android resources..."
+
+        ResToolsConfiguration workConfig = new ResToolsConfiguration(
+                config.new_prefix,
+                config.old_prefix,
+                sourceFolder,
+                resFolder,
+                manifestFilePath
+        )
+        workConfig.parallelism = config.parallelism
+        workConfig.virtualThreads = config.virtualThreads
+        workConfig.maxOpenFiles = config.maxOpenFiles
+        workConfig.incremental = config.incremental
+        println(">>>>>> file tasks : ${new FileTaskRunner(workConfig.parallelism, workConfig.virtualThreads, workConfig.maxOpenFiles).describe()}")
+        // 执行计划时只处理计划中的文件
+        RenamePlan plan = null
+        File planFile = renamePlanFile(project)
+        if (mode == MODE_APPLY) {
+            if (!planFile.isFile()) {
+                throw new IllegalStateException("no rename plan ${planFile}, run PlanResName first (请先执行 PlanResName)")
+            }
+            plan = RenamePlan.load(planFile)
+            println(">>>>>> rename plan : ${plan}")
+        }
+        // 预写日志：上次执行中断时从断点继续，RollbackResName 可据此恢复；只计划时不修改文件，不需要
+        RenameJournal journal = mode == MODE_PLAN ? null : RenameJournal.open(renameJournalDir(project))
+        println(">>>>>> rename journal : ${journal}")
+        // 增量替换：跳过上次处理后没有变化的文件；只计划时不读写状态，计划列出所有要改写的文件
+        RenameState state = config.incremental && mode != MODE_PLAN ? RenameState.open(renameStateFile(project)) : null
+        println(">>>>>> rename state : ${state}")
+        ReadTextCode.resetTierCounts()
+        Throwable failure = null
+        try {
+            RenamePlan result = doWork(workConfig, journal, mode, plan, state)
+            if (mode == MODE_PLAN) {
+                result.save(planFile)
+                println(">>>>>> rename plan : ${result}")
+                println(">>>>>> saved to ${planFile}, check it and run ApplyResName")
+            } else if (mode == MODE_APPLY) {
+                planFile.delete()       // 已执行，文件都已修改，计划不再有效
             }
+        } catch (Throwable e) {
+            failure = e
+            throw e
+        } finally {
+            EncodingCache cache = ReadTextCode.getEncodingCache()
+            EncodingManifest manifest = ReadTextCode.getEncodingManifest()
+            ReadTextCode.setEncodingCache(null)
+            ReadTextCode.setEncodingManifest(null)
+            cleanUp(failure, [{ journal?.close() }, { state?.save() }, { cache.save() }, { manifest.save() }])
+        }
+        // 各检测层级命中次数，STATISTICAL 为最慢的全量打分
+        println(">>>>>> encoding detection tiers: ${ReadTextCode.getTierCounts()}")
+        Set<File> unmatched = ReadTextCode.getUnmatchedFiles()
+        if (!unmatched.isEmpty()) {
+            println(">>>>>> WARNING: ${unmatched.size()} files match none of the encodings ${candidates}:")
+            unmatched.each { println("    ${it}") }
         }
+
+        println("++++++++++++++++++++++ Finish ${mode == MODE_PLAN ? 'planning' : 'replace'} resouces name, Total time: ${(System.currentTimeMillis() - startTime) / 1000} ")
     }
 
-    private def doWork(ResToolsConfiguration config) {
-        // 1. layout
-        LayoutReplace layoutReplace = new LayoutReplace(config)
-        layoutReplace.replaceThis()
-
-//        // 2. drawable
-        DrawableReplace drawableReplace = new DrawableReplace(config)
-        drawableReplace.replaceThis()
-//
-//
-//        // 3.  color
-        ColorReplace colorReplace = new ColorReplace(config)
-        colorReplace.replaceThis()
-//
-//
-//        // 4.  Anim
-        AnimReplace anim = new AnimReplace(config)
-        anim.replaceThis()
-//
-//        // 5.  menu
-        MenuReplace menuReplace = new MenuReplace(config)
-        menuReplace.replaceThis()
-//
-//        // 6.  mipmap
-        MipmapReplace mipmapReplace = new MipmapReplace(config)
-        mipmapReplace.replaceThis()
-//
-//        // 7. raw
-        RawReplace rawReplace = new RawReplace(config)
-        rawReplace.replaceThis()
-//
-//        // 8. xml
-        XmlReplace xmlReplace = new XmlReplace(config)
-        xmlReplace.replaceThis()
+    /**
+     * 按 resConfig 设置编码检测，打开编码缓存和 NormalizeEncoding 的编码清单；用完后须保存并清除
+     * @return 候选编码
+     */
+    private static CandidateEncodings openEncodings(Project project, config) {
+        ReadTextCode.setSamplingPolicy(SamplingPolicy.ofPrefix(config.encodingSampleBytes))
+        println(">>>>>> encoding sampling : ${ReadTextCode.getSamplingPolicy()}")
+        CandidateEncodings candidates = CandidateEncodings.of(config.encodings)
+        ReadTextCode.setCandidateEncodings(candidates)
+        println(">>>>>> candidate encodings : ${candidates}")
+        // 编码检测结果缓存，再次执行时未修改的文件不必重新检测；候选编码不同时检测结果可能不同，各用一个缓存文件
+        String cacheName = candidates.isRestricted() ? "encoding-cache-${candidates.charsets*.name().join('-')}.txt" : "encoding-cache.txt"
+        File encodingCacheFile = new File(project.buildDir, "resTools/${cacheName}")
+        ReadTextCode.setEncodingCache(EncodingCache.open(encodingCacheFile, config.encodingCacheVerifyContent))
+        println(">>>>>> encoding cache : ${ReadTextCode.getEncodingCache()}")
+        // NormalizeEncoding 任务记录的编码直接采用，不再检测
+        ReadTextCode.setEncodingManifest(EncodingManifest.open(encodingManifestFile(project)))
+        println(">>>>>> encoding manifest : ${ReadTextCode.getEncodingManifest()}")
+        return candidates
+    }
+
+    /**
+     * 在 finally 中依次执行关闭、保存等动作，一个出错其余照常执行。
+     * 错误不覆盖任务本身的异常 failure，记录后附加到它上面；任务成功(failure 为 null)时抛出第一个错误
+     */
+    private static void cleanUp(Throwable failure, List<Closure> actions) {
+        Throwable first = null
+        actions.each { Closure action ->
+            try {
+                action.call()
+            } catch (Throwable e) {
+                if (failure != null) {
+                    println(">>>>>> WARNING: ${e}")
+                    failure.addSuppressed(e)
+                } else if (first == null) {
+                    first = e
+                } else {
+                    first.addSuppressed(e)
+                }
+            }
+        }
+        if (first != null) {
+            throw first
+        }
+    }
+
+    /**
+     * @return MODE_PLAN 时为算出的计划，否则为 null
+     */
+    private static RenamePlan doWork(ResToolsConfiguration config, RenameJournal journal, String mode, RenamePlan plan, RenameState state) {
+        // 各资源类型只登记替换规则，由 RenameEngine 一次遍历所有文件完成替换，再统一重命名
+        RenameEngine engine = new RenameEngine(config, journal, plan, state)
+        [
+                new LayoutReplace(config),      // 1. layout
+                new DrawableReplace(config),    // 2. drawable
+                new ColorReplace(config),       // 3. color
+                new AnimReplace(config),        // 4. anim
+                new MenuReplace(config),        // 5. menu
+                new MipmapReplace(config),      // 6. mipmap
+                new RawReplace(config),         // 7. raw
+                new XmlReplace(config)          // 8. xml
+        ].each { it.collectRules(engine) }
 
         ////////////// all values  types ////////////////////
         // === 9. values test not support attrs
         ValuesReplace valuesReplace = new ValuesReplace(config)
-        valuesReplace.replaceValues(ValuesReplace.ALL_VALUES_TYPES)
+        valuesReplace.collectRules(engine, ValuesReplace.ALL_VALUES_TYPES)
+
+        if (mode == MODE_PLAN) {
+            return engine.plan()
+        }
+        if (mode == MODE_APPLY) {
+            engine.apply()
+        } else {
+            engine.run()
+        }
+        return null
     }
 }
\ No newline at end of file
@@ -1,11 +1,35 @@
 package com.github.better.restools
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.regex.Pattern
 
 class Tools {
 
     final static OUTPUT = "out/android/export/"
     final static USER_CURRENT_DIR = System.getProperty("user.dir")
 
+    /**
+     * 已编译的正则，各资源类型的正则只编译一次，多个线程可共用
+     */
+    private final static Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>()
+
+    /**
+     * 获取编译好的正则，不要在循环中用字符串做 =~ 或 ~，那样每次都会重新编译
+     * @param regex
+     * @return
+     */
+    static Pattern pattern(String regex) {
+        Pattern pattern = PATTERNS.get(regex)
+        if (pattern == null) {
+            pattern = Pattern.compile(regex)
+            Pattern old = PATTERNS.putIfAbsent(regex, pattern)
+            if (old != null) {
+                pattern = old
+            }
+        }
+        return pattern
+    }
+
     static void checkDir(String moduleDir, String appResDir) {
         File moduleDirFile = new File(moduleDir)
         if (!moduleDirFile.exists() || !moduleDirFile.isDirectory()) {
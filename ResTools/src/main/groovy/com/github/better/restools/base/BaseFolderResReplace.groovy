@@ -1,6 +1,9 @@
 package com.github.better.restools.base
 
 import com.github.better.restools.ResToolsConfiguration
+import com.github.better.restools.Tools
+import com.github.better.restools.engine.RenameEngine
+import com.github.better.restools.engine.ReplaceRule
 
 /**
  * 资源Base
@@ -30,6 +33,28 @@ abstract class BaseFolderResReplace extends BaseReplace {
      */
     abstract String getXmlRegex()
 
+    /**
+     * 该类型资源所在文件夹的过滤器，如 drawable、drawable-xx
+     * @return
+     */
+    abstract FilenameFilter getDirFilter()
+
+    /**
+     * xml 中的引用只在这些 res 子文件夹中替换，null 表示所有子文件夹
+     * @return
+     */
+    FilenameFilter getXmlDirFilter() {
+        return null
+    }
+
+    /**
+     * 是否替换 res 目录 xml 中的引用
+     * @return
+     */
+    boolean isXmlReplaced() {
+        return true
+    }
+
     /**
      * 获取特定类型的资源名集合,比如：
      * drawable,需要注意，必须包含 drawable-xx的
@@ -44,8 +69,8 @@ abstract class BaseFolderResReplace extends BaseReplace {
     final void replaceThis() throws IOException {
         println("***** $resTypeName ***** do $resTypeName start...")
 
-        def java_regx = ~getJavaRegex() //todo ~ 表示正则对象 Pattern
-        def xml_regx = ~getXmlRegex()   //todo ~ 表示正则对象 Pattern
+        def java_regx = Tools.pattern(getJavaRegex())   // 编译好的正则对象 Pattern
+        def xml_regx = Tools.pattern(getXmlRegex())
         Set<String> resNameSet = getResNameSet()
 
         // 1.源代码目录部分
@@ -56,6 +81,30 @@ abstract class BaseFolderResReplace extends BaseReplace {
         println("***** $resTypeName ***** do $resTypeName finish")
     }
 
+    /**
+     * 供 RenameEngine 使用：登记本类型的替换规则和文件重命名，不遍历文件，
+     * 效果与 replaceThis() 相同
+     * @param engine
+     */
+    final void collectRules(RenameEngine engine) {
+        addRules(engine, getResNameSet())
+    }
+
+    /**
+     * 登记规则，子类可追加特有的规则
+     * @param engine
+     * @param resNameSet 资源名
+     */
+    protected void addRules(RenameEngine engine, Set<String> resNameSet) {
+        engine.addSrcReference(resTypeName, resNameSet)     // R 中的类型名与资源文件夹类型名相同
+        if (isXmlReplaced()) {
+            engine.addResRule(new ReplaceRule(resTypeName, getXmlRegex(), 2, resNameSet, getXmlDirFilter()))
+        }
+        engine.addRename(resTypeName, resNameSet) { Set<String> names ->
+            listRenames(resDir, names, getDirFilter())
+        }
+    }
+
     abstract void replaceSrc(Set<String> resNameSet, java_regx) throws IOException
 
     abstract void replaceRes(Set<String> resNameSet, xml_regx) throws IOException
@@ -69,6 +118,20 @@ abstract class BaseFolderResReplace extends BaseReplace {
      * @param resTypeName 资源类型名
      */
     protected void renameFile(File file, Set<String> resNameSet, dir_filter, resTypeName) {
+        listRenames(file, resNameSet, dir_filter).each { File from, File to ->
+            RenameEngine.moveFile(resTypeName, from, to, null)
+        }
+    }
+
+    /**
+     * 列出要重命名的资源文件，不修改
+     * @param file res 目录
+     * @param resNameSet 资源名
+     * @param dir_filter
+     * @return 原文件 -> 新文件
+     */
+    protected Map<File, File> listRenames(File file, Set<String> resNameSet, dir_filter) {
+        Map<File, File> renames = new LinkedHashMap<>()
         File[] dirs = file.listFiles(dir_filter)
         dirs?.each { dir ->
             dir?.eachFile { it ->
@@ -90,19 +153,11 @@ abstract class BaseFolderResReplace extends BaseReplace {
                             newName = config.new_prefix + oldName.substring(config.old_prefix.length())
                         }
                     }
-
-                    File newFile = new File(it.getParent(), newName)
-                    if (newFile.exists()) {
-                        newFile.delete()
-                        println("--------------- $resTypeName ${it.name} 重命名，已存在：${newFile.name}")
-                    }
-
-                    if (!it.renameTo(newFile)) {
-                        println("--------------- $resTypeName ${it.name} 重命名失败！，请手动修改成：${newFile.name}")
-                    }
+                    renames.put(it, new File(it.getParent(), newName))
                 }
             }
         }
+        return renames
     }
 
     /*
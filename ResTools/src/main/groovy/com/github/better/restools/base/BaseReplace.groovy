@@ -1,9 +1,16 @@
 package com.github.better.restools.base
 
 import com.github.better.restools.ResToolsConfiguration
+import com.github.better.restools.engine.ByteMarkers
+import com.github.better.restools.engine.ByteText
+import com.github.better.restools.engine.FileTaskRunner
+import com.github.better.restools.engine.SpliceWriter
 import com.kanzhun.resformat.ReadTextCode
 
+import java.nio.charset.Charset
+import java.nio.file.Files
 import java.util.regex.Matcher
+import java.util.regex.Pattern
 
 abstract class BaseReplace {
     /**
@@ -22,11 +29,17 @@ abstract class BaseReplace {
 
     protected ResToolsConfiguration config
 
+    /**
+     * 并行处理各个文件，线程数见 ResToolsConfiguration.parallelism
+     */
+    protected FileTaskRunner runner
+
     BaseReplace(ResToolsConfiguration config) {
         this.config = config
         this.srcDir = new File(config.srcFolderPath)
         this.resDir = new File(config.resFolderPath)
         this.manifestFile = new File(config.manifestFilePath)
+        this.runner = new FileTaskRunner(config.parallelism, config.virtualThreads, config.maxOpenFiles)
     }
 
     //region ====== 源代码中的部分  start =============================================
@@ -34,45 +47,59 @@ abstract class BaseReplace {
      * 替换 src 源代码目录中的资源名
      * @param file 源代码目录
      * @param set 当前module下所有资源名 set
-     * @param java_regx 匹配正则
+     * @param java_regx 匹配正则，见 Tools.pattern
      */
-    protected void replaceSrcDir(File file, Set<String> set, java_regx) {
+    protected void replaceSrcDir(File file, Set<String> set, Pattern java_regx) {
+        List<File> files = []
+        collectSrcFiles(file, files)
+        files.sort()
+        // 各文件互不相关，并行处理，出错的文件最后一起报告
+        runner.run("source folder", files) { File it -> handleSrcFile(it, set, java_regx) }
+    }
+
+    protected void collectSrcFiles(File file, List<File> files) {
         if (file.exists()) {
             if (file.isDirectory()) {
-                file.eachFile { it -> replaceSrcDir(it, set, java_regx) }
+                file.eachFile { it -> collectSrcFiles(it, files) }
             } else {
                 if (file.name.endsWith(".java") || file.name.endsWith(".kt")) {  // only .java or .kt files
-                    handleSrcFile(file, set, java_regx)
+                    files << file
                 }
             }
         }
     }
 
-    private void handleSrcFile(File file, Set<String> set, regex) {
-        String code_version = ReadTextCode.getJavaEncode(file.getAbsolutePath());
+    protected void handleSrcFile(File file, Set<String> set, Pattern regex) {
+        byte[] bytes = Files.readAllBytes(file.toPath())
+        byte[] marker = ByteMarkers.literalPrefix(regex.pattern())
+        if (marker != null && ByteMarkers.isAsciiCompatible(bytes) && !ByteMarkers.contains(bytes, marker)
+                && ByteMarkers.isAsciiCompatible(ReadTextCode.getCandidateEncodings().getCharsets())) {
+            return      // 字节中没有标记，不解码
+        }
+        String code_version = ReadTextCode.detect(file, bytes).getCharsetName()    // 只读取一次文件，按字节检测编码
+        Charset charset = Charset.forName(code_version)
 
-        String fileContent = file.getText(code_version)              // every file is a text file
-        StringBuffer sb = new StringBuffer()             // result content
-        Matcher matcher = fileContent =~ regex          //=~ 正则表达式
+        CharSequence fileContent = ByteText.textOf(bytes, charset)     // UTF-8 等直接按字节匹配，否则解码
+        SpliceWriter edits = new SpliceWriter()             // 要替换的资源名
+        Matcher matcher = regex.matcher(fileContent)
         while (matcher.find()) {
             String oldResName = matcher.group(6)   // the old res name，group是针对（）来说的，group（0）就是指的整个串，group（1） 指的是第一个括号里的东西，group（2）指的第二个括号里的东西。
             if (set.contains(oldResName)) {               // 本模块中包含的资源名，才替换
-                String newResName = config.new_prefix + oldResName
-                if (oldResName.startsWith(config.old_prefix)) {     // 替换掉旧的前缀
-                    newResName = config.new_prefix + oldResName.substring(config.old_prefix.length())
-                }
-//                appendReplacement（StringBuffer sb, String replaceMent）
-//                方法是将输入字符序列首次与正在表达式匹配的部分进行更改为replaceMent并且把结果添加到一个sb结果集中，
-//                对于匹配之前的字符序列，它们被转移到sb字符集中。
-//                https://blog.csdn.net/mjlfto/article/details/53896981
-                matcher.appendReplacement(sb, "\$1$newResName") // 拼接 保留$1分组,替换$6分组
+                edits.add(matcher.start(6), matcher.end(6), newResName(oldResName))  // 只替换$6分组，其余原样保留
             }
         }
         // 修改了文件时，才写入文件
-        if (sb.length() > 0) {
-            matcher.appendTail(sb)              // 添加结尾
-            file.write(sb.toString(),code_version)           // 写回文件
+        if (!edits.isEmpty()) {
+            edits.write(file, bytes, fileContent, charset)   // 写回文件，未替换的字节不变
+            ReadTextCode.fileWritten(file, code_version)     // 编码未变，更新编码缓存
+        }
+    }
+
+    protected String newResName(String oldResName) {
+        if (oldResName.startsWith(config.old_prefix)) {     // 替换掉旧的前缀
+            return config.new_prefix + oldResName.substring(config.old_prefix.length())
         }
+        return config.new_prefix + oldResName
     }
     //endregion ====== 源代码中的部分  end =============================================
 
@@ -82,44 +109,39 @@ abstract class BaseReplace {
      * 操作资源
      * @param file
      * @param set
-     * @param regex
-     * @param valuesType 是否是 values 类型资源（values-xx, values-en这种）
-     *        values 类型资源时，需要保留 $3 分组
+     * @param regex 见 Tools.pattern
      * @return
      */
-    def handleResFile(File file, Set<String> set, regex, valuesType = false) {
-        boolean hasUpdate = false                 // 是否有修改
-        StringBuilder sb = new StringBuilder()    // 文件内容
-        file.each { line ->
-            Matcher matcher = line =~ regex
-            StringBuffer tSb = new StringBuffer()
+    def handleResFile(File file, Set<String> set, Pattern regex) {
+        byte[] bytes = file.bytes
+        byte[] marker = ByteMarkers.literalPrefix(regex.pattern())
+        if (marker != null && ByteMarkers.isAsciiCompatible(bytes) && !ByteMarkers.contains(bytes, marker)) {
+            return      // 字节中没有标记，如 @layout/，不再逐行读取
+        }
+        String code_version = ReadTextCode.detect(file, bytes).getCharsetName()    // 按检测到的编码匹配，写回时编码不变
+        Charset charset = Charset.forName(code_version)
+        CharSequence fileContent = ByteText.textOf(bytes, charset)
+        SpliceWriter edits = new SpliceWriter()   // 要替换的资源名
+        Matcher matcher = regex.matcher("")       // 每行复用同一个 Matcher
+        // 逐行匹配(行尾与 eachLine 相同)，行尾原样保留
+        int lineStart = 0
+        while (lineStart < fileContent.length()) {
+            int lineEnd = SpliceWriter.lineEnd(fileContent, lineStart)
+            matcher.reset(fileContent).region(lineStart, lineEnd)
             while (matcher.find()) {
                 String oldResName = matcher.group(2)
                 if (set.contains(oldResName)) {
-                    String newResName = config.new_prefix + oldResName
-                    if (oldResName.startsWith(config.old_prefix)) {
-                        newResName = config.new_prefix + oldResName.substring(config.old_prefix.length())
-                    }
-
-                    if (valuesType) {
-                        matcher.appendReplacement(tSb, "\$1$newResName\$3") // 拼接 保留$1分组,替换组2,保留组3
-                    } else {
-                        matcher.appendReplacement(tSb, "\$1$newResName") // 拼接 保留$1分组,替换组2
-                    }
+                    // 只替换组2，其余分组原样保留
+                    edits.add(matcher.start(2), matcher.end(2), newResName(oldResName))
                 }
             }
-            if (tSb.length() > 0) {                         // 如果包含了，则重新赋值line，并拼接余下部分
-                matcher.appendTail(tSb)
-                hasUpdate = true
-                line = tSb.toString()
-            }
-
-            sb.append(line).append("\r\n")
+            lineStart = SpliceWriter.nextLine(fileContent, lineEnd)
         }
 
         // 有修改了，才重新写入文件
-        if (hasUpdate) {
-            file.write(sb.toString())
+        if (!edits.isEmpty()) {
+            edits.write(file, bytes, fileContent, charset)
+            ReadTextCode.fileWritten(file, code_version)
         }
     }
 
@@ -129,19 +151,21 @@ abstract class BaseReplace {
      * @param set
      * @param regx
      * @param dir_filter null no filter
-     * @param valuesType 是否是 values 文件夹 类型(如：values，values-en)
      */
-    protected def replaceResDir(File file, Set<String> set, regx, dir_filter, valuesType = false) {
+    protected def replaceResDir(File file, Set<String> set, Pattern regx, dir_filter) {
         File[] dirs = file.listFiles(dir_filter as FilenameFilter)
+        List<File> files = []
         dirs?.each { dir ->
             if (dir != null && dir.isDirectory()) {
                 dir.eachFile { it ->
                     if (it.name.endsWith(".xml")) {     // 只在xml有引用
-                        handleResFile(it, set, regx, valuesType)
+                        files << it
                     }
                 }
             }
         }
+        files.sort()
+        runner.run("res folder", files) { File it -> handleResFile(it, set, regx) }
 
         // 清单文件 manifest file
         if (manifestFile != null) {
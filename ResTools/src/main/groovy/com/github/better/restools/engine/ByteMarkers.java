@@ -0,0 +1,154 @@
+package com.github.better.restools.engine;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 解码前按字节预筛文件：资源引用一定包含某个 ASCII 标记，如 R.、@layout/、&lt;string、synthetic，
+ * 字节中找不到标记的文件不必解码和正则匹配。
+ * <p>
+ * 只对 ASCII 兼容的编码成立(UTF-8、GBK、Big5、Shift_JIS 等，ASCII 字符就是它本身的单字节)，
+ * UTF-16/32 的文件见 {@link #isAsciiCompatible(byte[])}，此时不能预筛。
+ * 多字节字符的尾字节可能恰好是标记中的字节，只会多放过文件，不会漏掉引用。
+ */
+public final class ByteMarkers {
+
+    /**
+     * 正则中有特殊含义的字符
+     */
+    private static final String REGEX_META = "\\^$.|?*+()[]{}";
+
+    /**
+     * 用来判断编码是否 ASCII 兼容：标记中可能出现的字符
+     */
+    private static final String ASCII_PROBE = " \t\r\n.@/<=\"'_0123456789"
+            + "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    private ByteMarkers() {
+    }
+
+    /**
+     * 正则开头必须出现的字面量，作为预筛标记，如 "(@layout/)(\\w+)" 为 @layout/、
+     * "(&lt;string\\s+name..." 为 &lt;string
+     *
+     * @return 标记的 ASCII 字节，正则中有 | 或开头不是字面量时返回 null，表示不预筛
+     */
+    public static byte[] literalPrefix(String regex) {
+        if (regex.indexOf('|') >= 0) {
+            return null;
+        }
+        int start = 0;
+        while (start < regex.length() && regex.charAt(start) == '(' && !regex.startsWith("(?", start)) {
+            start++;
+        }
+        int end = start;
+        while (end < regex.length()) {
+            char c = regex.charAt(end);
+            if (REGEX_META.indexOf(c) >= 0 || c >= 0x80) {
+                break;
+            }
+            end++;
+        }
+        if (end < regex.length() && "?*{".indexOf(regex.charAt(end)) >= 0) {
+            end--;      // 最后一个字符可以不出现
+        }
+        if (end <= start) {
+            return null;
+        }
+        return regex.substring(start, end).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return marker 在 data 中第一次出现的位置，没有时返回 -1
+     */
+    public static int indexOf(byte[] data, byte[] marker, int from) {
+        if (marker.length == 0) {
+            return from;
+        }
+        byte first = marker[0];
+        int last = data.length - marker.length;
+        for (int i = from; i <= last; i++) {
+            if (data[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < marker.length && data[i + j] == marker[j]) {
+                j++;
+            }
+            if (j == marker.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static boolean contains(byte[] data, byte[] marker) {
+        return indexOf(data, marker, 0) >= 0;
+    }
+
+    /**
+     * 是否有 R.xxx 形式的引用的开头：R，空白(与正则 \s 相同)，再是 .
+     */
+    public static boolean hasRReference(byte[] data) {
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != 'R') {
+                continue;
+            }
+            int j = i + 1;
+            while (j < data.length && is_space(data[j])) {
+                j++;
+            }
+            if (j < data.length && data[j] == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 与 java.util.regex 中默认的 \s 相同：[ \t\n\x0B\f\r]
+    private static boolean is_space(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    /**
+     * @return false 表示文件以 UTF-16/32 的 BOM 开头，ASCII 字符不是单字节，不能按字节预筛
+     */
+    public static boolean isAsciiCompatible(byte[] data) {
+        if (data.length >= 2) {
+            int b0 = data[0] & 0xFF, b1 = data[1] & 0xFF;
+            if ((b0 == 0xFE && b1 == 0xFF) || (b0 == 0xFF && b1 == 0xFE)) {
+                return false;       // UTF-16 BE/LE，也包括 UTF-32 LE
+            }
+            if (data.length >= 4 && b0 == 0 && b1 == 0 && (data[2] & 0xFF) == 0xFE && (data[3] & 0xFF) == 0xFF) {
+                return false;       // UTF-32 BE
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return charset 中 ASCII 字符是否都编码为它本身的单字节
+     */
+    public static boolean isAsciiCompatible(Charset charset) {
+        if (!charset.canEncode()) {
+            return false;
+        }
+        return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @param charsets 文件可能的编码，如 ReadTextCode 的候选编码；为空时是检测器的编码，
+     *                 除 UTF-16(有 BOM) 外都 ASCII 兼容
+     * @return 是否都 ASCII 兼容，能按字节预筛
+     */
+    public static boolean isAsciiCompatible(Collection<Charset> charsets) {
+        for (Charset charset : charsets) {
+            if (!isAsciiCompatible(charset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.better.restools.engine;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 不解码，直接把文件的字节当作文本匹配：资源名和 R.xxx.name、@xxx/name、synthetic.main.name.
+ * 都是 ASCII，在 UTF-8、GBK 等编码的文件中就是这些字节本身。
+ * <p>
+ * 小于 0x80 的字节即为对应的 ASCII 字符；其他字节映射为 U+0180~U+01FF，
+ * 不是 \w、\s，也不是行尾，正则中的 . 仍能匹配。
+ * 匹配到的位置就是字节位置，见 {@link SpliceWriter#write}。
+ * <p>
+ * 只用于 {@link #canMatch(Charset)} 的编码：多字节字符中不会出现小于 0x80 的字节。
+ * GBK、Big5、Shift_JIS 的第二个字节可能是 ASCII，如 0x40 '@'，UTF-16 则不兼容 ASCII，这些仍需解码。
+ */
+public final class ByteText implements CharSequence {
+
+    /**
+     * 判断编码时放在非 ASCII 字节或转义序列后的 ASCII 字节
+     */
+    private static final String PROBE = "ABab";
+
+    /**
+     * 切换到多字节模式的转义序列：ISO-2022、HZ、UTF-7
+     */
+    private static final String[] SHIFTS = {
+            "\u001B$B", "\u001B$@", "\u001B$A", "\u001B$)C\u000E", "\u000E", "~{", "+"
+    };
+
+    private static final Map<Charset, Boolean> CAN_MATCH = new ConcurrentHashMap<>();
+
+    private final byte[] bytes;
+
+    private final int offset;
+
+    private final int length;
+
+    public ByteText(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    private ByteText(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @return charset 的文件能否不解码直接按字节匹配 ASCII 的资源引用
+     */
+    public static boolean canMatch(Charset charset) {
+        Boolean result = CAN_MATCH.get(charset);
+        if (result == null) {
+            result = probe(charset);
+            CAN_MATCH.put(charset, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return charset 能按字节匹配时为 bytes 的 ByteText，否则为解码后的文本
+     */
+    public static CharSequence textOf(byte[] bytes, Charset charset) {
+        return canMatch(charset) ? new ByteText(bytes) : new String(bytes, charset);
+    }
+
+    // ASCII 兼容，且任何非 ASCII 字节、转义序列之后的 ASCII 字节仍解码为它本身
+    private static boolean probe(Charset charset) {
+        if (!ByteMarkers.isAsciiCompatible(charset)) {
+            return false;
+        }
+        byte[] pair = new byte[2];
+        for (int lead = 0x80; lead <= 0xFF; lead++) {
+            pair[0] = (byte) lead;
+            for (int ascii = 0; ascii < 0x80; ascii++) {
+                pair[1] = (byte) ascii;
+                String decoded = new String(pair, charset);
+                if (decoded.isEmpty() || decoded.charAt(decoded.length() - 1) != ascii) {
+                    return false;
+                }
+            }
+        }
+        for (String shift : SHIFTS) {
+            byte[] data = (shift + PROBE).getBytes(StandardCharsets.US_ASCII);
+            if (!new String(data, charset).endsWith(PROBE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+        }
+        byte b = bytes[offset + index];
+        return b >= 0 ? (char) b : (char) (0x100 | (b & 0xFF));
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+        return new ByteText(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = charAt(i);
+        }
+        return new String(chars);
+    }
+}
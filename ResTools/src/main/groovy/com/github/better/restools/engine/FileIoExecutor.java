@@ -0,0 +1,146 @@
+package com.github.better.restools.engine;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 执行读取、匹配、写回单个文件的任务。
+ * <p>
+ * 文件在网络磁盘上时，耗时主要是每个文件的 IO 等待，CPU 空闲：此时可以每个文件一个虚拟线程
+ * (JDK 21 及以上，通过反射调用，插件仍可在 Java 8 上运行)；不支持时退回固定数量的平台线程。
+ * 两种方式同时打开的文件数都不超过 maxOpenFiles，不会耗尽文件描述符。
+ */
+public final class FileIoExecutor implements Executor {
+
+    /**
+     * 默认同时打开的文件数上限
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor()，JDK 21 以前为 null
+     */
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+
+    private final ExecutorService delegate;
+
+    private final boolean virtual;
+
+    private final int threads;
+
+    private final Semaphore openFiles;
+
+    private final int maxOpenFiles;
+
+    private FileIoExecutor(ExecutorService delegate, boolean virtual, int threads, int maxOpenFiles) {
+        this.delegate = delegate;
+        this.virtual = virtual;
+        this.threads = threads;
+        this.maxOpenFiles = maxOpenFiles;
+        this.openFiles = new Semaphore(maxOpenFiles);
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return 当前 JVM 是否支持虚拟线程
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * @param virtualThreads 支持时每个文件一个虚拟线程
+     * @param parallelism    平台线程数，不用虚拟线程时有效，0 或负数为 CPU 核数
+     * @param maxOpenFiles   同时处理(打开)的文件数上限，0 或负数为 {@link #DEFAULT_MAX_OPEN_FILES}
+     */
+    public static FileIoExecutor create(boolean virtualThreads, int parallelism, int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+        }
+        if (virtualThreads && NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                ExecutorService executor = (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+                return new FileIoExecutor(executor, true, maxOpenFiles, maxOpenFiles);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // JDK 19、20 中是预览功能，未开启时不可用，退回平台线程
+            }
+        }
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        threads = Math.min(threads, maxOpenFiles);
+        return new FileIoExecutor(new ForkJoinPool(threads), false, threads, maxOpenFiles);
+    }
+
+    /**
+     * 与 {@link #create} 参数相同时的执行方式，用于日志；不创建线程
+     */
+    public static String describe(boolean virtualThreads, int parallelism, int maxOpenFiles) {
+        if (maxOpenFiles <= 0) {
+            maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+        }
+        if (virtualThreads && NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            return text(true, maxOpenFiles, maxOpenFiles);
+        }
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return text(false, Math.min(threads, maxOpenFiles), maxOpenFiles);
+    }
+
+    private static String text(boolean virtual, int threads, int maxOpenFiles) {
+        return virtual ? "virtual threads, at most " + maxOpenFiles + " open files"
+                : threads + " platform threads";
+    }
+
+    /**
+     * @return 是否使用虚拟线程
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return 最多同时执行的任务数：平台线程数，或虚拟线程时的 maxOpenFiles
+     */
+    public int getConcurrency() {
+        return threads;
+    }
+
+    /**
+     * 任务开始前取得一个打开文件的许可，结束后释放；虚拟线程等待许可时不占用平台线程
+     */
+    @Override
+    public void execute(final Runnable task) {
+        delegate.execute(new Runnable() {
+            @Override
+            public void run() {
+                openFiles.acquireUninterruptibly();
+                try {
+                    task.run();
+                } finally {
+                    openFiles.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * 已提交的任务会继续执行完
+     */
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return text(virtual, threads, maxOpenFiles);
+    }
+}
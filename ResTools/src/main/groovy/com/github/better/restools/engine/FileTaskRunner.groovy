@@ -0,0 +1,100 @@
+package com.github.better.restools.engine
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * 对一批互不相关的文件并行执行同一个任务(读取、替换、写回)，线程见 FileIoExecutor。
+ * 一个文件出错不会中断其他文件，所有文件完成后把全部错误按路径排序一起抛出；
+ * 结果按输入顺序返回，与线程数无关
+ */
+class FileTaskRunner {
+
+    /**
+     * 平台线程数，1 且不用虚拟线程时在当前线程逐个执行
+     */
+    final int parallelism
+    /**
+     * 支持时每个文件一个虚拟线程
+     */
+    final boolean virtualThreads
+    /**
+     * 同时处理的文件数上限
+     */
+    final int maxOpenFiles
+
+    /**
+     * @param parallelism 线程数，0 或负数为 CPU 核数
+     * @param virtualThreads 是否使用虚拟线程(JDK 21 及以上)，不支持时使用 parallelism 个平台线程
+     * @param maxOpenFiles 同时处理的文件数上限，0 为 FileIoExecutor.DEFAULT_MAX_OPEN_FILES
+     */
+    FileTaskRunner(int parallelism, boolean virtualThreads = false, int maxOpenFiles = 0) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()
+        this.virtualThreads = virtualThreads
+        this.maxOpenFiles = maxOpenFiles
+    }
+
+    /**
+     * @return 执行方式，用于日志
+     */
+    String describe() {
+        if (parallelism == 1 && !virtualThreads) {
+            return "1 thread"
+        }
+        return FileIoExecutor.describe(virtualThreads, parallelism, maxOpenFiles)
+    }
+
+    /**
+     * @param stage 阶段名，用于错误信息，如 "source folder"
+     * @param files 要处理的文件，应已排序
+     * @param task 处理一个文件，会在多个线程中同时调用
+     * @return 每个文件的结果，与 files 顺序相同
+     * @throws RuntimeException 有文件出错时，列出所有出错的文件，各文件的异常见 getSuppressed()
+     */
+    def <T> List<T> run(String stage, List<File> files, Closure<T> task) {
+        Object[] results = new Object[files.size()]
+        Map<File, Throwable> errors = new ConcurrentHashMap<>()
+        if ((parallelism == 1 && !virtualThreads) || files.size() < 2) {
+            for (int i = 0; i < files.size(); i++) {
+                results[i] = runOne(files.get(i), task, errors)
+            }
+        } else {
+            FileIoExecutor executor = FileIoExecutor.create(virtualThreads, parallelism, maxOpenFiles)
+            try {
+                List<CompletableFuture<Void>> tasks = new ArrayList<>(files.size())
+                for (int i = 0; i < files.size(); i++) {
+                    int index = i
+                    tasks << CompletableFuture.runAsync({ results[index] = runOne(files.get(index), task, errors) } as Runnable, executor)
+                }
+                CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join()
+            } finally {
+                executor.shutdown()
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw failure(stage, errors)
+        }
+        return Arrays.asList(results) as List<T>
+    }
+
+    private static Object runOne(File file, Closure task, Map<File, Throwable> errors) {
+        try {
+            return task.call(file)
+        } catch (Exception e) {
+            errors.put(file, e)
+            return null
+        }
+    }
+
+    private static RuntimeException failure(String stage, Map<File, Throwable> errors) {
+        Map<File, Throwable> sorted = new TreeMap<>(errors)
+        StringBuilder sb = new StringBuilder()
+        sb.append("$stage: ${sorted.size()} file(s) failed")
+        sorted.each { file, e ->
+            sb.append("\n    ").append(file.path).append(": ").append(e.toString())
+        }
+        RuntimeException failure = new RuntimeException(sb.toString())
+        sorted.values().each { failure.addSuppressed(it) }
+        return failure
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.better.restools.engine
+
+import com.github.better.restools.ResToolsConfiguration
+
+/**
+ * 旧资源名 -> 新资源名：去掉旧前缀(若有)，加上新前缀
+ */
+class NameMapper {
+    final String newPrefix
+    final String oldPrefix
+
+    NameMapper(ResToolsConfiguration config) {
+        this.newPrefix = config.new_prefix
+        this.oldPrefix = config.old_prefix == null ? "" : config.old_prefix
+    }
+
+    String map(String oldResName) {
+        if (oldResName.startsWith(oldPrefix)) {     // 替换掉旧的前缀
+            return newPrefix + oldResName.substring(oldPrefix.length())
+        }
+        return newPrefix + oldResName
+    }
+}
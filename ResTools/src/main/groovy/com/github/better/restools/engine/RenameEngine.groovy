@@ -0,0 +1,445 @@
+package com.github.better.restools.engine
+
+import com.github.better.restools.ResToolsConfiguration
+import com.kanzhun.resformat.ReadTextCode
+import groovy.io.FileType
+
+import java.nio.charset.Charset
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.regex.Matcher
+
+/**
+ * 一次遍历完成所有资源类型的替换：
+ * 各资源类型(LayoutReplace、ValuesReplace 等)先通过 collectRules 登记替换规则和重命名，
+ * 再由引擎把每个 .java/.kt 源码文件、res 下的 .xml 文件和清单文件各读写一次，
+ * 按登记顺序依次应用所有规则，最后统一重命名资源文件。
+ *
+ * 规则按资源类型的原有顺序作用于同一个文件，结果与逐个类型各自遍历一遍相同。
+ * 各文件互不相关，由 FileTaskRunner 按 parallelism 并行处理。
+ * 有 RenameJournal 时记录替换计划和每个文件的改写、重命名，中断后可继续或回滚。
+ * plan() 只计算要改写的文件和重命名，不修改文件；apply() 只处理计划中列出的文件，见 RenamePlan。
+ * 有 RenameState 时跳过上次处理后内容和替换表都没有变的文件。
+ */
+class RenameEngine {
+
+    private final File srcDir
+    private final File resDir
+    private final File manifestFile
+    private final NameMapper mapper
+    private final FileTaskRunner runner
+
+    /**
+     * 源码中 R.xxx.name 引用：R 中的类型名 -> 资源名，所有类型合并成一个 SourceReferenceRule
+     */
+    private final Map<String, Set<String>> srcReferences = new LinkedHashMap<>()
+    private final List<ReplaceRule> srcRules = []
+    private final List<ReplaceRule> resRules = []
+    /**
+     * 资源类型名 -> 列出该类型要重命名的资源文件的闭包
+     */
+    private final Map<String, Closure<Map<File, File>>> renames = new LinkedHashMap<>()
+    private final Map<String, Set<String>> renameNames = new LinkedHashMap<>()
+    /**
+     * 预写日志，null 为不记录，见 RenameJournal
+     */
+    private final RenameJournal journal
+    /**
+     * 要执行的计划，null 为遍历目录
+     */
+    private final RenamePlan applying
+    /**
+     * 各文件上次处理后的状态，null 为每次都处理所有文件
+     */
+    private final RenameState state
+    /**
+     * 各次登记的资源名，键按登记顺序编号，记入日志和计划；继续上次的执行或执行计划时沿用其中的资源名
+     */
+    private final Map<String, Set<String>> plan = new LinkedHashMap<>()
+    /**
+     * 影响替换结果的配置，继续执行时须与日志中的相同
+     */
+    private final List<String> planConfig
+    /**
+     * 源码文件可能的编码都 ASCII 兼容时，才按字节预筛源码文件，见 ByteMarkers
+     */
+    private boolean srcPrefilter
+    /**
+     * 预筛后没有解码和匹配的文件数
+     */
+    private final AtomicInteger skipped = new AtomicInteger()
+    /**
+     * 没有解码，直接按字节匹配的文件数
+     */
+    private final AtomicInteger byteMatched = new AtomicInteger()
+    /**
+     * 上次处理后没有变化、直接跳过的文件数
+     */
+    private final AtomicInteger unchanged = new AtomicInteger()
+
+    /**
+     * @param journal 预写日志，null 为不记录
+     * @param applying 要执行的计划，null 为遍历目录；须在登记规则前传入
+     * @param state 各文件上次处理后的状态，null 为处理所有文件
+     */
+    RenameEngine(ResToolsConfiguration config, RenameJournal journal = null, RenamePlan applying = null, RenameState state = null) {
+        this.srcDir = new File(config.srcFolderPath)
+        this.resDir = new File(config.resFolderPath)
+        this.manifestFile = new File(config.manifestFilePath)
+        this.mapper = new NameMapper(config)
+        this.runner = new FileTaskRunner(config.parallelism, config.virtualThreads, config.maxOpenFiles)
+        this.journal = journal
+        this.applying = applying
+        this.state = state
+        this.planConfig = [mapper.oldPrefix, mapper.newPrefix, srcDir.absolutePath, resDir.absolutePath, manifestFile.absolutePath]
+    }
+
+    /**
+     * 记录一次登记的资源名。继续上次的执行时，部分文件已经替换，重新计算的资源名不可靠，
+     * 改用日志中记录的；执行计划时用计划中的
+     */
+    private Set<String> planned(String what, Set<String> names) {
+        String key = "${plan.size()}:$what"
+        if (journal != null && journal.isResuming()) {
+            names = journal.getPlan().get(key) ?: new LinkedHashSet<String>()
+        } else if (applying != null) {
+            names = applying.getNames().get(key) ?: new LinkedHashSet<String>()
+        }
+        plan.put(key, names)
+        return names
+    }
+
+    /**
+     * 登记源码中 R.rType.name 形式的引用。同一类型登记多次时合并资源名，
+     * 如 color 文件夹和 values 中的 color 都对应 R.color
+     * @param rType R 中的类型名，如 layout、string、array
+     */
+    void addSrcReference(String rType, Set<String> names) {
+        names = planned("ref:$rType", names)
+        if (names.isEmpty()) {
+            return
+        }
+        Set<String> merged = srcReferences.get(rType)
+        if (merged == null) {
+            srcReferences.put(rType, names)
+        } else {
+            merged = new HashSet<>(merged)
+            merged.addAll(names)
+            srcReferences.put(rType, merged)
+        }
+    }
+
+    /**
+     * 登记源码(.java/.kt)中的其他替换规则，没有资源名的规则不会匹配，直接忽略
+     */
+    void addSrcRule(ReplaceRule rule) {
+        rule = rule.withNames(planned("src:$rule.type", rule.names))
+        if (!rule.names.isEmpty()) {
+            srcRules << rule
+        }
+    }
+
+    /**
+     * 登记 res 目录 xml 文件与清单文件中的替换规则
+     */
+    void addResRule(ReplaceRule rule) {
+        rule = rule.withNames(planned("res:$rule.type", rule.names))
+        if (!rule.names.isEmpty()) {
+            resRules << rule
+        }
+    }
+
+    /**
+     * 登记资源文件重命名，在所有文件内容替换完成后执行
+     * @param names 要重命名的资源名
+     * @param rename 以 names 调用，返回要重命名的文件：原文件 -> 新文件
+     */
+    void addRename(String type, Set<String> names, Closure<Map<File, File>> rename) {
+        renameNames.put(type, planned("rename:$type", names))
+        renames.put(type, rename)
+    }
+
+    /**
+     * 替换所有文件中的资源名，再重命名资源文件
+     */
+    void run() {
+        execute(null)
+    }
+
+    /**
+     * 只计算，不修改任何文件
+     * @return 各规则的资源名、要改写的文件及替换数、要重命名的文件
+     */
+    RenamePlan plan() {
+        RenamePlan result = new RenamePlan(planConfig)
+        plan.each { key, names -> result.putNames(key, names) }
+        execute(result)
+        return result
+    }
+
+    /**
+     * 执行构造时传入的计划：只处理其中列出的文件，不再遍历目录
+     * @throws IllegalStateException 配置与计划不同，或列出的文件在计划之后被修改过
+     */
+    void apply() {
+        if (!applying.hasConfig(planConfig)) {
+            throw new IllegalStateException("the rename plan was made for another config [${applying.config}], make a new plan")
+        }
+        // 继续上次中断的执行时，已改写的文件当然变了
+        List<File> changed = applying.getChangedFiles().findAll { journal == null || !journal.isWritten(it) }
+        if (!changed.isEmpty()) {
+            throw new IllegalStateException("${changed.size()} file(s) changed since the rename plan was made, make a new plan:\n    " + changed.join("\n    "))
+        }
+        execute(null)
+    }
+
+    /**
+     * @param dryRun 不为 null 时只把结果记入其中，不修改文件
+     */
+    private void execute(RenamePlan dryRun) {
+        boolean write = dryRun == null
+        SourceReferenceRule referenceRule = srcReferences.isEmpty() ? null : new SourceReferenceRule(srcReferences)
+        println("++++++ rename engine: ${srcReferences.size()} R types, ${srcRules.size()} other source rules, ${resRules.size()} res rules, ${renames.size()} renames, ${runner.describe()}${write ? '' : ', dry run'}${applying != null ? ', applying plan' : ''}")
+        srcPrefilter = ByteMarkers.isAsciiCompatible(ReadTextCode.getCandidateEncodings().getCharsets())
+        if (write) {
+            journal?.start(planConfig, plan)     // 先记录计划，再修改文件
+        }
+        if (state != null) {
+            // 映射为自身的资源名替换后内容不变，不计入替换表
+            Map<String, List<String>> table = new LinkedHashMap<>()
+            plan.each { key, names -> table.put(key, names.findAll { mapper.map(it) != it }) }
+            state.setTable(planConfig, table)
+        }
+
+        // 1.源代码目录，每个文件只读写一次
+        long start = System.currentTimeMillis()
+        List<File> srcFiles = []
+        if (applying != null) {
+            srcFiles.addAll(applying.getFiles(RenamePlan.SRC))
+        } else if (srcDir.isDirectory()) {
+            srcDir.eachFileRecurse(FileType.FILES) { file ->
+                if (file.name.endsWith(".java") || file.name.endsWith(".kt")) {  // only .java or .kt files
+                    srcFiles << file
+                }
+            }
+        }
+        srcFiles.sort()
+        List<ReplaceRule> javaRules = srcRules.findAll { !it.ktOnly }
+        skipped.set(0)
+        byteMatched.set(0)
+        unchanged.set(0)
+        List<Integer> srcEdits = runner.run("source folder", srcFiles) { File file ->
+            incremental(file, write, srcPrefilter) { replaceSrcFile(file, referenceRule, file.name.endsWith(".kt") ? srcRules : javaRules, write) }
+        }
+        record(dryRun, RenamePlan.SRC, srcFiles, srcEdits)
+        println("---------- source folder: ${srcEdits.count { it != 0 }} of ${srcFiles.size()} files ${write ? 'changed' : 'to change'}, ${unchanged.get()} unchanged since last run, ${skipped.get()} skipped by byte markers, ${byteMatched.get()} matched as bytes, in ${System.currentTimeMillis() - start} ms")
+
+        // 2.res 目录下各文件夹中的 xml 及清单文件
+        start = System.currentTimeMillis()
+        Map<File, List<ReplaceRule>> resFiles = new TreeMap<>()
+        if (applying != null) {
+            applying.getFiles(RenamePlan.RES).each { file ->
+                resFiles.put(file, file == manifestFile.absoluteFile ? resRules
+                        : resRules.findAll { it.appliesToResDir(resDir, file.parentFile.name) })
+            }
+        } else {
+            resDir.listFiles()?.each { dir ->
+                if (!dir.isDirectory()) {
+                    return
+                }
+                List<ReplaceRule> rules = resRules.findAll { it.appliesToResDir(resDir, dir.name) }
+                if (rules.isEmpty()) {
+                    return
+                }
+                dir.eachFile { file ->
+                    if (file.name.endsWith(".xml")) {     // 只在xml有引用
+                        resFiles.put(file, rules)
+                    }
+                }
+            }
+            if (manifestFile.isFile()) {        // 清单文件 manifest file
+                resFiles.put(manifestFile, resRules)
+            }
+        }
+        skipped.set(0)
+        byteMatched.set(0)
+        unchanged.set(0)
+        List<File> resList = new ArrayList<>(resFiles.keySet())
+        List<Integer> resEdits = runner.run("res folder", resList) { File file ->
+            incremental(file, write, true) { replaceResFile(file, resFiles.get(file), write) }
+        }
+        record(dryRun, RenamePlan.RES, resList, resEdits)
+        println("---------- res folder: ${resEdits.count { it != 0 }} of ${resFiles.size()} files ${write ? 'changed' : 'to change'}, ${unchanged.get()} unchanged since last run, ${skipped.get()} skipped by byte markers, ${byteMatched.get()} matched as bytes, in ${System.currentTimeMillis() - start} ms")
+
+        // 3.修改文件名
+        if (applying != null) {
+            applying.getMoves().each { move ->
+                if (journal == null || !journal.isMoved(move.to)) {     // 继续上次的执行时，已完成的重命名不再处理
+                    moveFile(move.type, move.from, move.to, journal)
+                }
+            }
+        } else {
+            renames.each { type, rename ->
+                println("---------- $type ----- rename ${write ? 'start...' : 'plan'}")
+                rename.call(renameNames.get(type)).each { File from, File to ->
+                    if (!write) {
+                        dryRun.addMove(type, from, to)
+                    } else if (journal == null || !journal.isMoved(from)) {     // 继续上次的执行时，已重命名的文件不再处理
+                        moveFile(type, from, to, journal)
+                    }
+                }
+                println("---------- $type ----- rename end")
+            }
+        }
+        if (write) {
+            journal?.finish()
+        }
+    }
+
+    /**
+     * 有 RenameState 时，上次处理后内容没有变、也不含新增资源名的文件不再处理；只在写入时记录文件现在的状态
+     * @param asciiCompatible 文件可能的编码是否都 ASCII 兼容，能按字节查找新增的资源名
+     * @param replace 处理文件，返回替换数
+     */
+    private int incremental(File file, boolean write, boolean asciiCompatible, Closure<Integer> replace) {
+        if (state != null && state.isUnchanged(file, asciiCompatible, write)) {
+            unchanged.incrementAndGet()
+            return 0
+        }
+        int edits = replace.call()
+        if (write && state != null) {
+            state.done(file)
+        }
+        return edits
+    }
+
+    private static void record(RenamePlan dryRun, String section, List<File> files, List<Integer> edits) {
+        if (dryRun == null) {
+            return
+        }
+        for (int i = 0; i < files.size(); i++) {
+            if (edits.get(i) > 0) {
+                dryRun.addEdit(section, files.get(i), edits.get(i))
+            }
+        }
+    }
+
+    /**
+     * 重命名资源文件，新文件已存在时覆盖；from 已不存在而 to 存在时为已重命名(上次中断在记录完成之前)，不再处理
+     * @param journal 记录重命名，null 为不记录
+     * @throws IOException 重命名失败，日志不会记为完成，可继续或回滚
+     */
+    static void moveFile(String type, File from, File to, RenameJournal journal) {
+        if (!from.exists() && to.exists()) {
+            println("--------------- $type ${from.name} 已重命名为：${to.name}")
+            return
+        }
+        int move = journal != null ? journal.beforeMove(from, to) : -1    // 先备份将被覆盖的文件
+        if (to.exists()) {
+            to.delete()
+            println("--------------- $type ${from.name} 重命名，已存在：${to.name}")
+        }
+        if (!from.renameTo(to)) {
+            throw new IOException("could not rename $from to $to")
+        }
+        if (journal != null) {
+            journal.moved(move)
+        }
+    }
+
+    /**
+     * @param write false 时只计算替换数，不写入
+     * @return 替换数
+     */
+    private int replaceSrcFile(File file, SourceReferenceRule referenceRule, List<ReplaceRule> rules, boolean write) {
+        if (write && journal != null && journal.isWritten(file)) {
+            return -1       // 继续上次的执行，已替换过
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath())
+        if (srcPrefilter && ByteMarkers.isAsciiCompatible(bytes)) {
+            // 没有任何标记的文件不解码
+            if (referenceRule != null && !referenceRule.mayMatch(bytes)) {
+                referenceRule = null
+            }
+            rules = rules.findAll { it.mayMatch(bytes) }
+            if (referenceRule == null && rules.isEmpty()) {
+                skipped.incrementAndGet()
+                return 0
+            }
+        }
+        String code_version = ReadTextCode.detect(file, bytes).getCharsetName()    // 只读取一次文件，按字节检测编码
+        Charset charset = Charset.forName(code_version)
+        CharSequence fileContent = text(bytes, charset)
+        // 各规则都在原文中查找，登记要替换的资源名，重叠时先登记的规则优先
+        SpliceWriter edits = new SpliceWriter()
+        if (referenceRule != null) {
+            referenceRule.collect(fileContent, mapper, edits)
+        }
+        for (ReplaceRule rule : rules) {
+            rule.collect(rule.newMatcher(), fileContent, 0, fileContent.length(), mapper, edits)
+        }
+        // 修改了文件时，才写入文件：未替换的字节原样写回
+        if (edits.isEmpty() || !write) {
+            return edits.size()
+        }
+        journal?.beforeWrite(file, bytes)       // 先备份原内容
+        edits.write(file, bytes, fileContent, charset)
+        journal?.written(file)
+        ReadTextCode.fileWritten(file, code_version)     // 编码未变，更新编码缓存
+        return edits.size()
+    }
+
+    /**
+     * ASCII 兼容且多字节字符中没有 ASCII 字节的编码(UTF-8 等)不解码，直接按字节匹配，见 ByteText
+     */
+    private CharSequence text(byte[] bytes, Charset charset) {
+        CharSequence text = ByteText.textOf(bytes, charset)
+        if (text instanceof ByteText) {
+            byteMatched.incrementAndGet()
+        }
+        return text
+    }
+
+    /**
+     * @param write false 时只计算替换数，不写入
+     * @return 替换数
+     */
+    private int replaceResFile(File file, List<ReplaceRule> rules, boolean write) {
+        if (write && journal != null && journal.isWritten(file)) {
+            return -1       // 继续上次的执行，已替换过
+        }
+        byte[] bytes = file.bytes
+        if (ByteMarkers.isAsciiCompatible(bytes)) {
+            // 只应用文件中有标记的规则，都没有时不再逐行读取
+            rules = rules.findAll { it.mayMatch(bytes) }
+            if (rules.isEmpty()) {
+                skipped.incrementAndGet()
+                return 0
+            }
+        }
+        String code_version = ReadTextCode.detect(file, bytes).getCharsetName()    // 按检测到的编码匹配，写回时编码不变
+        Charset charset = Charset.forName(code_version)
+        CharSequence fileContent = text(bytes, charset)
+        List<Matcher> matchers = rules.collect { it.newMatcher() }      // 每行复用，各线程各自创建
+        SpliceWriter edits = new SpliceWriter()
+        // 逐行匹配(行尾与 eachLine 相同)，行尾原样保留
+        int lineStart = 0
+        while (lineStart < fileContent.length()) {
+            int lineEnd = SpliceWriter.lineEnd(fileContent, lineStart)
+            for (int i = 0; i < rules.size(); i++) {
+                rules.get(i).collect(matchers.get(i), fileContent, lineStart, lineEnd, mapper, edits)
+            }
+            lineStart = SpliceWriter.nextLine(fileContent, lineEnd)
+        }
+
+        // 有修改了，才重新写入文件
+        if (edits.isEmpty() || !write) {
+            return edits.size()
+        }
+        journal?.beforeWrite(file, bytes)       // 先备份原内容
+        edits.write(file, bytes, fileContent, charset)
+        journal?.written(file)
+        ReadTextCode.fileWritten(file, code_version)
+        return edits.size()
+    }
+}
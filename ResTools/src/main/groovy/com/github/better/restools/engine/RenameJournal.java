@@ -0,0 +1,435 @@
+package com.github.better.restools.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * ReplaceResName 的预写日志：替换资源名中途失败(进程被杀、出错)后，再次执行从断点继续，
+ * 或用 {@link #rollback(File)} 恢复所有已修改的文件。
+ * <p>
+ * 开始时记录配置和计算出的替换计划(每条规则的资源名)，继续时沿用记录的计划，
+ * 不按已部分修改的文件重新计算。改写文件前先备份原内容并记录，改写后再记录完成；
+ * 重命名文件前记录，被覆盖的同名文件先备份，重命名后记录完成。继续时跳过已完成的文件，
+ * 改写到一半的文件先从备份恢复再重新处理。
+ * <p>
+ * 日志每条记录立即写入操作系统，进程中断不会丢失；断电不保证。各方法可在多个线程中调用。
+ */
+public final class RenameJournal {
+
+    private static final String HEADER = "# resTools rename journal v1";
+
+    private static final String JOURNAL = "journal.txt";
+
+    private static final String BACKUP = "backup";
+
+    private static final class Move {
+        final File from;
+        final File to;
+        /**
+         * 被覆盖的 to 的备份编号，-1 为没有覆盖
+         */
+        final int backup;
+        boolean done;
+
+        Move(File from, File to, int backup) {
+            this.from = from;
+            this.to = to;
+            this.backup = backup;
+        }
+    }
+
+    private final File dir;
+
+    private final File journal;
+
+    private String config;
+
+    /**
+     * 规则的键 -> 资源名，见 RenameEngine
+     */
+    private final Map<String, Set<String>> plan = new LinkedHashMap<>();
+
+    /**
+     * 备份编号 -> 改写的文件，按改写顺序
+     */
+    private final Map<Integer, File> writes = new LinkedHashMap<>();
+
+    private final Set<File> written = new HashSet<>();
+
+    private final Map<File, Integer> writing = new HashMap<>();
+
+    private final List<Move> moves = new ArrayList<>();
+
+    private final Set<File> moved = new HashSet<>();
+
+    private boolean finished;
+
+    private boolean resuming;
+
+    private int nextBackup;
+
+    private OutputStream out;
+
+    private RenameJournal(File dir) {
+        this.dir = dir;
+        this.journal = new File(dir, JOURNAL);
+    }
+
+    /**
+     * 读取 dir 中的日志。上次执行没有完成时继续，见 {@link #isResuming()}；
+     * 已完成或没有日志时，清除旧日志和备份，重新开始
+     *
+     * @param dir 日志目录，如 build/resTools/rename-journal
+     */
+    public static RenameJournal open(File dir) throws IOException {
+        RenameJournal result = new RenameJournal(dir);
+        if (result.journal.isFile()) {
+            result.load();
+            if (result.config == null || result.finished) {
+                delete_dir(dir);
+                result = new RenameJournal(dir);
+            } else {
+                result.recover();
+                result.resuming = true;
+            }
+        }
+        Files.createDirectories(new File(dir, BACKUP).toPath());
+        boolean partial = result.resuming && !ends_with_newline(result.journal);
+        result.out = new FileOutputStream(result.journal, true);
+        if (partial) {
+            result.out.write('\n');     // 中断时写了一半的最后一行，之后的记录另起一行
+        }
+        return result;
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(journal.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;
+            }
+            Map<Integer, Move> pending = new HashMap<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                try {
+                    switch (fields[0]) {
+                        case "config":
+                            config = line.substring("config\t".length());
+                            break;
+                        case "plan":
+                            plan.put(fields[1], fields[2].isEmpty() ? new LinkedHashSet<String>()
+                                    : new LinkedHashSet<>(Arrays.asList(fields[2].split(","))));
+                            break;
+                        case "write": {
+                            int id = Integer.parseInt(fields[1]);
+                            File file = new File(fields[2]);
+                            writes.put(id, file);
+                            writing.put(file, id);
+                            nextBackup = Math.max(nextBackup, id + 1);
+                            break;
+                        }
+                        case "written": {
+                            File file = writes.get(Integer.parseInt(fields[1]));
+                            writing.remove(file);
+                            written.add(file);
+                            break;
+                        }
+                        case "move": {
+                            int id = Integer.parseInt(fields[1]);
+                            int backup = Integer.parseInt(fields[2]);
+                            Move move = new Move(new File(fields[3]), new File(fields[4]), backup);
+                            moves.add(move);
+                            pending.put(id, move);
+                            nextBackup = Math.max(nextBackup, backup + 1);
+                            break;
+                        }
+                        case "moved": {
+                            Move move = pending.remove(Integer.parseInt(fields[1]));
+                            move.done = true;
+                            moved.add(move.to);
+                            break;
+                        }
+                        case "finish":
+                            finished = true;
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (RuntimeException e) {
+                    // 中断时写了一半的最后一行
+                }
+            }
+        }
+    }
+
+    // 改写到一半的文件从备份恢复，重命名是原子的，按文件是否存在判断是否完成
+    private void recover() throws IOException {
+        for (Map.Entry<File, Integer> e : writing.entrySet()) {
+            Files.write(e.getKey().toPath(), Files.readAllBytes(backup(e.getValue()).toPath()));
+        }
+        writing.clear();
+        for (Move move : moves) {
+            if (!move.done && !move.from.exists() && move.to.exists()) {
+                move.done = true;
+                moved.add(move.to);
+            }
+        }
+    }
+
+    /**
+     * @return 是否继续上次没有完成的执行
+     */
+    public boolean isResuming() {
+        return resuming;
+    }
+
+    /**
+     * 开始执行：新的日志记录配置和计划；继续时核对配置
+     *
+     * @param config 影响替换结果的配置，如前缀和目录，继续时必须相同
+     * @param plan   规则的键 -> 资源名，继续时忽略，见 {@link #getPlan()}
+     * @throws IllegalStateException 继续时配置不同
+     */
+    public synchronized void start(List<String> config, Map<String, Set<String>> plan) throws IOException {
+        String line = join(config);
+        if (this.config != null) {
+            if (!this.config.equals(line)) {
+                throw new IllegalStateException("rename journal " + journal + " was written for another config ["
+                        + this.config + "], run RollbackResName or delete " + dir + " first");
+            }
+            return;
+        }
+        this.config = line;
+        StringBuilder sb = new StringBuilder(HEADER).append('\n');
+        sb.append("config\t").append(line).append('\n');
+        for (Map.Entry<String, Set<String>> e : plan.entrySet()) {
+            sb.append("plan\t").append(e.getKey()).append('\t').append(join_names(e.getValue())).append('\n');
+            this.plan.put(e.getKey(), new LinkedHashSet<>(e.getValue()));
+        }
+        out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 记录的计划：规则的键 -> 资源名
+     */
+    public synchronized Map<String, Set<String>> getPlan() {
+        return Collections.unmodifiableMap(plan);
+    }
+
+    /**
+     * @return 本次执行中已改写完成的文件，继续时跳过
+     */
+    public synchronized boolean isWritten(File file) {
+        return written.contains(file.getAbsoluteFile());
+    }
+
+    /**
+     * 改写 file 之前调用：备份原内容并记录
+     *
+     * @param original file 当前的全部字节
+     */
+    public void beforeWrite(File file, byte[] original) throws IOException {
+        file = file.getAbsoluteFile();
+        int id = next_backup();
+        Files.write(backup(id).toPath(), original);
+        synchronized (this) {
+            writes.put(id, file);
+            writing.put(file, id);
+            append("write\t" + id + "\t" + file.getPath());
+        }
+    }
+
+    /**
+     * 改写 file 完成后调用
+     */
+    public synchronized void written(File file) throws IOException {
+        file = file.getAbsoluteFile();
+        Integer id = writing.remove(file);
+        if (id != null) {
+            written.add(file);
+            append("written\t" + id);
+        }
+    }
+
+    /**
+     * @return file 是否是本次执行中重命名后的文件，继续时不再重命名
+     */
+    public synchronized boolean isMoved(File file) {
+        return moved.contains(file.getAbsoluteFile());
+    }
+
+    /**
+     * 重命名 from 之前调用：to 已存在时(会被覆盖)先备份
+     *
+     * @return 传给 {@link #moved(int)} 的编号
+     */
+    public int beforeMove(File from, File to) throws IOException {
+        from = from.getAbsoluteFile();
+        to = to.getAbsoluteFile();
+        int backup = -1;
+        if (to.isFile()) {
+            backup = next_backup();
+            Files.write(backup(backup).toPath(), Files.readAllBytes(to.toPath()));
+        }
+        synchronized (this) {
+            Move move = new Move(from, to, backup);
+            moves.add(move);
+            append("move\t" + (moves.size() - 1) + "\t" + backup + "\t" + from.getPath() + "\t" + to.getPath());
+            return moves.size() - 1;
+        }
+    }
+
+    /**
+     * 重命名完成后调用
+     *
+     * @param id {@link #beforeMove} 的返回值
+     */
+    public synchronized void moved(int id) throws IOException {
+        Move move = moves.get(id);
+        move.done = true;
+        moved.add(move.to);
+        append("moved\t" + id);
+    }
+
+    /**
+     * 全部完成，再次执行时重新开始；日志和备份保留到下次执行，仍可回滚
+     */
+    public synchronized void finish() throws IOException {
+        finished = true;
+        append("finish");
+    }
+
+    /**
+     * 关闭日志文件，未完成时保留，供下次继续或回滚
+     */
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * 按相反顺序撤销日志中的重命名，再把改写过的文件恢复为备份的原内容，最后删除日志
+     *
+     * @param dir 日志目录
+     * @return 恢复结果，用于日志；没有日志时返回 null
+     * @throws IOException 有文件恢复失败时，日志保留，可再次回滚
+     */
+    public static String rollback(File dir) throws IOException {
+        RenameJournal journal = new RenameJournal(dir);
+        if (!journal.journal.isFile()) {
+            return null;
+        }
+        journal.load();
+        List<String> failed = new ArrayList<>();
+        int undone = 0;
+        for (int i = journal.moves.size() - 1; i >= 0; i--) {
+            Move move = journal.moves.get(i);
+            if (!move.from.exists() && move.to.exists()) {
+                if (!move.to.renameTo(move.from)) {
+                    failed.add(move.to + " -> " + move.from);
+                    continue;
+                }
+                undone++;
+            }
+            if (move.backup >= 0 && !move.to.exists()) {
+                Files.write(move.to.toPath(), Files.readAllBytes(journal.backup(move.backup).toPath()));
+            }
+        }
+        // 同一文件改写多次时，最早的备份是原内容
+        List<Integer> ids = new ArrayList<>(journal.writes.keySet());
+        Set<File> restored = new TreeSet<>();
+        for (int i = ids.size() - 1; i >= 0; i--) {
+            File file = journal.writes.get(ids.get(i));
+            Files.write(file.toPath(), Files.readAllBytes(journal.backup(ids.get(i)).toPath()));
+            restored.add(file);
+        }
+        if (!failed.isEmpty()) {
+            throw new IOException("rollback could not move back " + failed.size() + " file(s): " + failed);
+        }
+        delete_dir(dir);
+        return restored.size() + " files restored, " + undone + " renames undone";
+    }
+
+    private synchronized int next_backup() {
+        return nextBackup++;
+    }
+
+    private File backup(int id) {
+        return new File(new File(dir, BACKUP), String.valueOf(id));
+    }
+
+    private void append(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean ends_with_newline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    private static String join(List<String> fields) {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            if (sb.length() > 0) {
+                sb.append('\t');
+            }
+            sb.append(field == null ? "" : field.replace('\t', ' ').replace('\n', ' '));
+        }
+        return sb.toString();
+    }
+
+    private static String join_names(Set<String> names) {
+        StringBuilder sb = new StringBuilder();
+        for (String name : new TreeSet<>(names)) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    private static void delete_dir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    delete_dir(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    @Override
+    public String toString() {
+        return journal + (isResuming() ? " (resuming: " + written.size() + " files written, "
+                + moved.size() + " renamed)" : " (new)");
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.better.restools.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 替换资源名的计划：不修改文件算出的各规则的资源名、要改写的文件及替换数、要重命名的资源文件。
+ * 保存为文本文件，可在执行前检查影响范围，再由 RenameEngine.apply() 只处理其中列出的文件，
+ * 不再遍历目录。列出的文件记录了大小和修改时间，计划之后被修改过时拒绝执行。
+ */
+public final class RenamePlan {
+
+    private static final String HEADER = "# resTools rename plan v1";
+
+    /**
+     * 源码文件
+     */
+    public static final String SRC = "src";
+
+    /**
+     * res 目录下的 xml 和清单文件
+     */
+    public static final String RES = "res";
+
+    public static final class Edit {
+        public final String section;
+        public final File file;
+        /**
+         * 替换数
+         */
+        public final int count;
+        final long size;
+        final long mtime;
+
+        Edit(String section, File file, int count, long size, long mtime) {
+            this.section = section;
+            this.file = file;
+            this.count = count;
+            this.size = size;
+            this.mtime = mtime;
+        }
+    }
+
+    public static final class Move {
+        /**
+         * 资源类型名
+         */
+        public final String type;
+        public final File from;
+        public final File to;
+
+        Move(String type, File from, File to) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private final String config;
+
+    /**
+     * 规则的键 -> 资源名，与 RenameJournal 中的计划相同
+     */
+    private final Map<String, Set<String>> names = new LinkedHashMap<>();
+
+    private final List<Edit> edits = new ArrayList<>();
+
+    private final List<Move> moves = new ArrayList<>();
+
+    /**
+     * @param config 影响替换结果的配置，执行时必须相同
+     */
+    public RenamePlan(List<String> config) {
+        this(join(config, '\t'));
+    }
+
+    private RenamePlan(String config) {
+        this.config = config;
+    }
+
+    /**
+     * @return 是否为 config 算出的计划
+     */
+    public boolean hasConfig(List<String> config) {
+        return this.config.equals(join(config, '\t'));
+    }
+
+    public String getConfig() {
+        return config;
+    }
+
+    public synchronized void putNames(String key, Set<String> names) {
+        this.names.put(key, new LinkedHashSet<>(names));
+    }
+
+    /**
+     * @return 规则的键 -> 资源名
+     */
+    public synchronized Map<String, Set<String>> getNames() {
+        return Collections.unmodifiableMap(names);
+    }
+
+    /**
+     * 记录要改写的文件，同时记录它现在的大小和修改时间
+     *
+     * @param section {@link #SRC} 或 {@link #RES}
+     */
+    public synchronized void addEdit(String section, File file, int count) {
+        file = file.getAbsoluteFile();
+        edits.add(new Edit(section, file, count, file.length(), file.lastModified()));
+    }
+
+    /**
+     * @return section 中要改写的文件，按记录顺序
+     */
+    public synchronized List<File> getFiles(String section) {
+        List<File> files = new ArrayList<>();
+        for (Edit edit : edits) {
+            if (edit.section.equals(section)) {
+                files.add(edit.file);
+            }
+        }
+        return files;
+    }
+
+    public synchronized List<Edit> getEdits() {
+        return Collections.unmodifiableList(edits);
+    }
+
+    /**
+     * @return 计划之后被修改过或已不存在的文件
+     */
+    public synchronized List<File> getChangedFiles() {
+        List<File> changed = new ArrayList<>();
+        for (Edit edit : edits) {
+            if (edit.size != edit.file.length() || edit.mtime != edit.file.lastModified()) {
+                changed.add(edit.file);
+            }
+        }
+        return changed;
+    }
+
+    public synchronized void addMove(String type, File from, File to) {
+        moves.add(new Move(type, from.getAbsoluteFile(), to.getAbsoluteFile()));
+    }
+
+    public synchronized List<Move> getMoves() {
+        return Collections.unmodifiableList(moves);
+    }
+
+    /**
+     * 写入 store，整个文件一次替换
+     */
+    public synchronized void save(File store) throws IOException {
+        File dir = store.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+        File tmp = File.createTempFile(store.getName(), ".tmp", dir);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                writer.write("config\t" + config);
+                writer.newLine();
+                for (Map.Entry<String, Set<String>> e : names.entrySet()) {
+                    // 排序便于查看和比较
+                    writer.write("names\t" + e.getKey() + "\t" + join(new TreeSet<>(e.getValue()), ','));
+                    writer.newLine();
+                }
+                for (Edit edit : edits) {
+                    writer.write("edit\t" + edit.section + "\t" + edit.count + "\t" + edit.size + "\t" + edit.mtime
+                            + "\t" + edit.file.getPath());
+                    writer.newLine();
+                }
+                for (Move move : moves) {
+                    writer.write("move\t" + move.type + "\t" + move.from.getPath() + "\t" + move.to.getPath());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @throws IOException 没有计划文件或格式不对
+     */
+    public static RenamePlan load(File store) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(store.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                throw new IOException(store + " is not a rename plan");
+            }
+            String line = reader.readLine();
+            if (line == null || !line.startsWith("config\t")) {
+                throw new IOException(store + " has no config");
+            }
+            RenamePlan plan = new RenamePlan(line.substring("config\t".length()));
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                switch (fields[0]) {
+                    case "names":
+                        plan.names.put(fields[1], fields[2].isEmpty() ? new LinkedHashSet<String>()
+                                : new LinkedHashSet<>(Arrays.asList(fields[2].split(","))));
+                        break;
+                    case "edit":
+                        plan.edits.add(new Edit(fields[1], new File(fields[5]), Integer.parseInt(fields[2]),
+                                Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+                        break;
+                    case "move":
+                        plan.moves.add(new Move(fields[1], new File(fields[2]), new File(fields[3])));
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return plan;
+        }
+    }
+
+    private static String join(Iterable<String> parts, char separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(part == null ? "" : part.replace('\t', ' ').replace('\n', ' '));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        int names = 0;
+        for (Set<String> set : this.names.values()) {
+            names += set.size();
+        }
+        int count = 0;
+        for (Edit edit : edits) {
+            count += edit.count;
+        }
+        return this.names.size() + " rules with " + names + " names, " + edits.size() + " files to edit ("
+                + count + " replacements), " + moves.size() + " renames";
+    }
+}
@@ -0,0 +1,353 @@
+package com.github.better.restools.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * 各文件上次处理后的状态(大小、修改时间、内容的 CRC32)及当时的替换表，保存在文件中供下次执行使用。
+ * 文件内容没有变，且替换表中新增的资源名都不在文件中时，再处理一遍也不会有新的替换，{@link RenameEngine} 直接跳过。
+ * 合并分支后新增了几个资源时，只有新增、修改过的文件和引用了新资源名的文件会再处理。
+ * <p>
+ * 大小和修改时间相同即认为内容未变，不读取文件；修改时间变了而大小相同时(如切换分支)再比较 CRC32。
+ * 替换表变了时读取文件，按字节查找新增的资源名；配置变了时处理所有文件。
+ * 线程安全。
+ */
+public final class RenameState {
+
+    private static final String HEADER = "# resTools rename state v2";
+
+    /**
+     * 替换表的一项，行首为 TABLE 的行：版本、项
+     */
+    private static final String TABLE = "table";
+
+    /**
+     * 替换表中的配置项以此开头，其余项为 规则的键 + tab + 资源名
+     */
+    private static final String CONFIG = "=";
+
+    private static final long NO_CRC = -1;
+
+    private static final byte[][] NOT_SEARCHABLE = new byte[0][];
+
+    private static final class Entry {
+        final long size;
+        final long mtime;
+        final long crc;
+        final String table;
+
+        Entry(long size, long mtime, long crc, String table) {
+            this.size = size;
+            this.mtime = mtime;
+            this.crc = crc;
+            this.table = table;
+        }
+    }
+
+    private final File store;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 替换表的版本 -> 各项，本次的及文件记录中用到的
+     */
+    private final Map<String, Set<String>> tables = new ConcurrentHashMap<>();
+
+    /**
+     * 上次的替换表版本 -> 本次新增的资源名的 ASCII 字节，不能按字节查找(配置变了等)时为 NOT_SEARCHABLE
+     */
+    private final Map<String, byte[][]> added = new ConcurrentHashMap<>();
+
+    private volatile String table;
+
+    private volatile boolean dirty;
+
+    private RenameState(File store) {
+        this.store = store;
+    }
+
+    /**
+     * 读取 store，没有或无法读取时为空
+     *
+     * @param store 状态文件，如 build/resTools/rename-state.txt
+     */
+    public static RenameState open(File store) {
+        RenameState state = new RenameState(store);
+        if (store.isFile()) {
+            try {
+                state.load();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error loading rename state " + store + ": " + e);
+                state.entries.clear();
+                state.tables.clear();
+            }
+        }
+        return state;
+    }
+
+    private void load() throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(store.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(reader.readLine())) {
+                return;     // 旧版本的记录，所有文件再处理一次
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(TABLE + "\t")) {
+                    // table, version, item；项可能含 tab，放在最后
+                    String[] fields = line.split("\t", 3);
+                    if (fields.length == 3) {
+                        tables.computeIfAbsent(fields[1], k -> new HashSet<>()).add(fields[2]);
+                    }
+                    continue;
+                }
+                // size, mtime, crc, table, path；路径可能含 tab，放在最后
+                String[] fields = line.split("\t", 5);
+                if (fields.length != 5) {
+                    continue;
+                }
+                entries.put(fields[4], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                        Long.parseLong(fields[2]), fields[3]));
+            }
+        }
+    }
+
+    /**
+     * 设置本次的替换表：配置和各规则实际会改变的资源名。映射为自身的资源名替换后内容不变，不计入，
+     * 已加过前缀的模块再次执行时替换表不随这些资源名变化
+     *
+     * @param config 影响替换结果的配置
+     * @param table  规则的键 -> 会改变的资源名
+     */
+    public void setTable(List<String> config, Map<String, ? extends Collection<String>> table) {
+        Set<String> items = new HashSet<>();
+        for (String part : config) {
+            items.add(CONFIG + part);
+        }
+        for (Map.Entry<String, ? extends Collection<String>> e : table.entrySet()) {
+            for (String name : e.getValue()) {
+                items.add(e.getKey() + "\t" + name);
+            }
+        }
+        String version = version(items);
+        tables.put(version, items);
+        added.clear();
+        this.table = version;
+    }
+
+    private static String version(Set<String> items) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String item : new TreeSet<>(items)) {
+                digest.update((item + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 在 {@link #setTable} 之后调用
+     *
+     * @param asciiCompatible 文件的编码是否 ASCII 兼容，为 false 时替换表变了的文件不按字节查找，都再处理
+     * @param refresh         未变时记下新的修改时间和替换表，下次不必再读；只计算不写入时为 false，记录不变
+     * @return file 上次处理后内容没有变，且本次替换表新增的资源名都不在其中
+     */
+    public boolean isUnchanged(File file, boolean asciiCompatible, boolean refresh) {
+        String key = file.getAbsolutePath();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        String current = table;
+        byte[][] names = null;
+        if (!entry.table.equals(current)) {
+            names = asciiCompatible ? addedSince(entry.table) : NOT_SEARCHABLE;
+            if (names == NOT_SEARCHABLE) {
+                return false;
+            }
+        }
+        long size = file.length();
+        long mtime = file.lastModified();
+        if (entry.size != size) {
+            return false;
+        }
+        if (entry.mtime == mtime && names == null) {
+            return true;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            return false;
+        }
+        long crc = crc(bytes);
+        if (crc != entry.crc || (names != null
+                && (!ByteMarkers.isAsciiCompatible(bytes) || containsAny(bytes, names)))) {
+            return false;
+        }
+        if (refresh) {
+            entries.put(key, new Entry(size, mtime, crc, current));
+            dirty = true;
+        }
+        return true;
+    }
+
+    /**
+     * @return 从替换表 version 到本次新增的资源名；version 未知、配置变了或有非 ASCII 资源名时为 NOT_SEARCHABLE
+     */
+    private byte[][] addedSince(String version) {
+        return added.computeIfAbsent(version, v -> {
+            Set<String> before = tables.get(v);
+            Set<String> now = tables.get(table);
+            if (before == null || now == null) {
+                return NOT_SEARCHABLE;
+            }
+            Set<String> names = new HashSet<>();
+            for (String item : now) {
+                if (before.contains(item)) {
+                    continue;
+                }
+                int tab = item.indexOf('\t');
+                if (item.startsWith(CONFIG) || tab < 0) {
+                    return NOT_SEARCHABLE;
+                }
+                names.add(item.substring(tab + 1));
+            }
+            for (String item : before) {
+                if (item.startsWith(CONFIG) && !now.contains(item)) {
+                    return NOT_SEARCHABLE;
+                }
+            }
+            List<byte[]> result = new ArrayList<>(names.size());
+            for (String name : names) {
+                if (!StandardCharsets.US_ASCII.newEncoder().canEncode(name)) {
+                    return NOT_SEARCHABLE;
+                }
+                result.add(name.getBytes(StandardCharsets.US_ASCII));
+            }
+            return result.toArray(new byte[0][]);
+        });
+    }
+
+    private static boolean containsAny(byte[] bytes, byte[][] names) {
+        for (byte[] name : names) {
+            if (ByteMarkers.contains(bytes, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录 file 已按本次的替换表处理，在处理(写入)完成后调用
+     */
+    public void done(File file) {
+        entries.put(file.getAbsolutePath(), new Entry(file.length(), file.lastModified(), crc(file), table));
+        dirty = true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 有变化时写回，去掉已不存在的文件和不再用到的替换表；整个文件一次替换
+     */
+    public void save() throws IOException {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!new File(it.next().getKey()).isFile()) {
+                it.remove();
+                dirty = true;
+            }
+        }
+        if (!dirty) {
+            return;
+        }
+        Set<String> used = new HashSet<>();
+        for (Entry entry : entries.values()) {
+            used.add(entry.table);
+        }
+        tables.keySet().retainAll(used);
+        File dir = store.getAbsoluteFile().getParentFile();
+        Files.createDirectories(dir.toPath());
+        File tmp = File.createTempFile(store.getName(), ".tmp", dir);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Map.Entry<String, Set<String>> e : tables.entrySet()) {
+                    for (String item : new TreeSet<>(e.getValue())) {
+                        writer.write(TABLE + "\t" + e.getKey() + "\t" + item);
+                        writer.newLine();
+                    }
+                }
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    writer.write(entry.size + "\t" + entry.mtime + "\t" + entry.crc + "\t" + entry.table + "\t"
+                            + e.getKey());
+                    writer.newLine();
+                }
+            }
+            try {
+                Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), store.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            dirty = false;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static long crc(File file) {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            return NO_CRC;      // 与任何记录都不同，文件会再处理
+        }
+        return crc.getValue();
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return store + " (" + entries.size() + " files)";
+    }
+}
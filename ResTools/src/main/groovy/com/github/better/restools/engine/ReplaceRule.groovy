@@ -0,0 +1,102 @@
+package com.github.better.restools.engine
+
+import com.github.better.restools.Tools
+
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * 一条替换规则：一种资源类型在一类文件中的一个正则，
+ * 如 layout 在源码中的 R.layout.xxx、在 xml 中的 @layout/xxx
+ */
+class ReplaceRule {
+    /**
+     * 资源类型名，仅用于日志
+     */
+    final String type
+    final Pattern pattern
+    /**
+     * 资源名所在分组，源码 R.xxx 为 6，其余为 2
+     */
+    final int nameGroup
+    /**
+     * 本模块中该类型的资源名，只替换这些
+     */
+    final Set<String> names
+    /**
+     * 只作用于名称匹配的 res 子目录，null 为所有子目录(仅 res 规则)
+     */
+    final FilenameFilter dirFilter
+    /**
+     * 只作用于 .kt 文件(仅源码规则)
+     */
+    final boolean ktOnly
+    /**
+     * 匹配时必须出现的 ASCII 字面量，见 ByteMarkers.literalPrefix，null 表示不预筛
+     */
+    final byte[] marker
+
+    ReplaceRule(String type, String regex, int nameGroup, Set<String> names,
+                FilenameFilter dirFilter = null, boolean ktOnly = false) {
+        this.type = type
+        this.pattern = Tools.pattern(regex)
+        this.nameGroup = nameGroup
+        this.names = names
+        this.dirFilter = dirFilter
+        this.ktOnly = ktOnly
+        this.marker = ByteMarkers.literalPrefix(regex)
+    }
+
+    /**
+     * @return 资源名为 names 的同一规则
+     */
+    ReplaceRule withNames(Set<String> names) {
+        if (names.is(this.names)) {
+            return this
+        }
+        return new ReplaceRule(type, pattern.pattern(), nameGroup, names, dirFilter, ktOnly)
+    }
+
+    /**
+     * 按字节预筛，false 表示文件中一定没有本规则能匹配的内容
+     * @param bytes ASCII 兼容编码的文件内容
+     */
+    boolean mayMatch(byte[] bytes) {
+        return marker == null || ByteMarkers.contains(bytes, marker)
+    }
+
+    /**
+     * 逐行查找时用 newMatcher() 创建一次 Matcher，每行复用
+     */
+    Matcher newMatcher() {
+        return pattern.matcher("")
+    }
+
+    /**
+     * 在 text 的 [from, to) 中查找，把可替换的资源名登记到 edits。
+     * 只替换资源名所在分组，前后的分组原样保留
+     * @param matcher 本规则 newMatcher() 创建的 Matcher，会被 reset 到 text
+     * @return 登记的替换数
+     */
+    int collect(Matcher matcher, CharSequence text, int from, int to, NameMapper mapper, SpliceWriter edits) {
+        matcher.reset(text).region(from, to)
+        int count = 0
+        while (matcher.find()) {
+            String oldResName = matcher.group(nameGroup)
+            if (names.contains(oldResName)                 // 本模块中包含的资源名，才替换
+                    && edits.add(matcher.start(nameGroup), matcher.end(nameGroup), mapper.map(oldResName))) {
+                count++
+            }
+        }
+        return count
+    }
+
+    boolean appliesToResDir(File resDir, String dirName) {
+        return dirFilter == null || dirFilter.accept(resDir, dirName)
+    }
+
+    @Override
+    String toString() {
+        return "$type ${pattern.pattern()} (${names.size()} names)"
+    }
+}
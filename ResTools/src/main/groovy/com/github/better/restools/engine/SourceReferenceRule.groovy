@@ -0,0 +1,57 @@
+package com.github.better.restools.engine
+
+import com.github.better.restools.Tools
+
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+/**
+ * 源码中所有类型的资源引用 R.xxx.name 合并成一个正则，一次扫描完成，
+ * 再按匹配到的类型(layout、string、array 等)查该类型的资源名集合。
+ * 各 token 之间允许有空白，如 R . layout . xxx，与各类型原来的 getJavaRegex() 一致
+ */
+class SourceReferenceRule {
+    /**
+     * R 中的类型名 -> 本模块中该类型的资源名
+     */
+    private final Map<String, Set<String>> namesByType
+    /**
+     * $1: R.xxx. 前缀  $2: 类型名  $3: 资源名
+     */
+    final Pattern pattern
+
+    SourceReferenceRule(Map<String, Set<String>> namesByType) {
+        this.namesByType = namesByType
+        this.pattern = Tools.pattern("(R\\s*?\\.\\s*?(" + namesByType.keySet().collect { Pattern.quote(it) }.join("|") + ")\\s*?\\.\\s*?)(\\w+)")
+    }
+
+    /**
+     * 按字节预筛，false 表示文件中一定没有 R.xxx 引用
+     * @param bytes ASCII 兼容编码的文件内容
+     */
+    boolean mayMatch(byte[] bytes) {
+        return ByteMarkers.hasRReference(bytes)
+    }
+
+    /**
+     * 把 text 中可替换的资源名登记到 edits，只替换 $3 资源名
+     * @return 登记的替换数
+     */
+    int collect(CharSequence text, NameMapper mapper, SpliceWriter edits) {
+        Matcher matcher = pattern.matcher(text)
+        int count = 0
+        while (matcher.find()) {
+            String oldResName = matcher.group(3)
+            if (namesByType.get(matcher.group(2)).contains(oldResName)      // 本模块中包含的资源名，才替换
+                    && edits.add(matcher.start(3), matcher.end(3), mapper.map(oldResName))) {
+                count++
+            }
+        }
+        return count
+    }
+
+    @Override
+    String toString() {
+        return pattern.pattern()
+    }
+}
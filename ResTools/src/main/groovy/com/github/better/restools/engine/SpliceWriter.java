@@ -0,0 +1,277 @@
+package com.github.better.restools.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 记录对文件文本的替换(起止位置和新的资源名)，写回时原文件中没有替换的字节原样写出，
+ * 只编码替换的部分：不用把整个文件重新编码，行尾、编码和 BOM 都保持不变。
+ * <p>
+ * 替换位置按解码时的字符位置记录，写回前换算成字节位置：UTF-8 直接按字符计算，
+ * 其他编码再严格解码一遍定位。被替换的原文和替换文本必须都是 ASCII，且与原字节一致，
+ * 否则(解码有错、状态编码的转义等)退回整体编码替换后的文本。
+ * 按 {@link ByteText} 匹配时替换位置就是字节位置，不需换算。
+ */
+public final class SpliceWriter {
+
+    private static final class Edit {
+        final int start;
+        final int end;
+        final String replacement;
+
+        Edit(int start, int end, String replacement) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * 起始位置 -> 替换，互不重叠
+     */
+    private final TreeMap<Integer, Edit> edits = new TreeMap<>();
+
+    /**
+     * 登记一处替换。与已登记的替换重叠时忽略：先登记的规则优先，
+     * 与各规则依次作用于替换后的文本时相同
+     *
+     * @param start       被替换文本的起始字符位置
+     * @param end         结束位置(不含)
+     * @param replacement 新文本
+     * @return 是否登记
+     */
+    public boolean add(int start, int end, String replacement) {
+        Map.Entry<Integer, Edit> before = edits.floorEntry(start);
+        if (before != null && before.getValue().end > start) {
+            return false;
+        }
+        Map.Entry<Integer, Edit> after = edits.ceilingEntry(start);
+        if (after != null && after.getKey() < end) {
+            return false;
+        }
+        edits.put(start, new Edit(start, end, replacement));
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    public int size() {
+        return edits.size();
+    }
+
+    /**
+     * @return 替换后的文本
+     */
+    public String apply(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + edits.size() * 16);
+        int pos = 0;
+        for (Edit edit : edits.values()) {
+            sb.append(text, pos, edit.start).append(edit.replacement);
+            pos = edit.end;
+        }
+        return sb.append(text, pos, text.length()).toString();
+    }
+
+    /**
+     * 写回替换后的 file
+     *
+     * @param original file 的全部字节
+     * @param text     original 用 charset 解码后的文本，或 original 的 {@link ByteText}，替换位置相对于它
+     * @return true 为按字节拼接写回，false 为退回整体编码写回
+     */
+    public boolean write(File file, byte[] original, CharSequence text, Charset charset) throws IOException {
+        if (text instanceof ByteText) {
+            splice(file, original, null, charset);      // 替换位置就是字节位置
+            return true;
+        }
+        String string = text.toString();
+        int[] offsets = locate(original, string, charset);
+        if (offsets == null) {
+            Files.write(file.toPath(), apply(string).getBytes(charset));
+            return false;
+        }
+        splice(file, original, offsets, StandardCharsets.US_ASCII);
+        return true;
+    }
+
+    /**
+     * @param offsets 各替换起始的字节位置，null 时即为替换的位置
+     */
+    private void splice(File file, byte[] original, int[] offsets, Charset charset) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            int pos = 0;
+            int i = 0;
+            for (Edit edit : edits.values()) {
+                int start = offsets == null ? edit.start : offsets[i++];
+                out.write(original, pos, start - pos);
+                out.write(edit.replacement.getBytes(charset));
+                pos = start + (edit.end - edit.start);
+            }
+            out.write(original, pos, original.length - pos);
+        }
+    }
+
+    /**
+     * @return 各替换起始的字节位置，不能确定时返回 null
+     */
+    private int[] locate(byte[] original, String text, Charset charset) {
+        for (Edit edit : edits.values()) {
+            if (!is_ascii(edit.replacement) || !is_ascii(text, edit.start, edit.end)) {
+                return null;
+            }
+        }
+        int[] offsets;
+        if (StandardCharsets.UTF_8.equals(charset) && text.indexOf('\uFFFD') < 0) {
+            offsets = utf8_offsets(text);
+        } else {
+            offsets = decoded_offsets(original, charset);
+        }
+        if (offsets == null) {
+            return null;
+        }
+        // 被替换的 ASCII 文本必须正是原文件中这些位置的字节
+        int i = 0;
+        for (Edit edit : edits.values()) {
+            int start = offsets[i++];
+            int length = edit.end - edit.start;
+            if (start + length > original.length) {
+                return null;
+            }
+            for (int k = 0; k < length; k++) {
+                if (original[start + k] != text.charAt(edit.start + k)) {
+                    return null;
+                }
+            }
+        }
+        return offsets;
+    }
+
+    // UTF-8 无损解码时，字符位置按编码长度累加即为字节位置
+    private int[] utf8_offsets(String text) {
+        int[] offsets = new int[edits.size()];
+        int i = 0;
+        int chars = 0;
+        int bytes = 0;
+        for (Edit edit : edits.values()) {
+            while (chars < edit.start) {
+                char c = text.charAt(chars);
+                if (c < 0x80) {
+                    bytes += 1;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c)) {
+                    bytes += 4;     // 与后面的低位代理一起
+                    chars++;
+                } else {
+                    bytes += 3;
+                }
+                chars++;
+            }
+            offsets[i++] = bytes;
+        }
+        return offsets;
+    }
+
+    // 其他编码：严格解码到每个替换的起始字符，此时输入的位置即为字节位置
+    private int[] decoded_offsets(byte[] original, Charset charset) {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(original);
+        CharBuffer out = CharBuffer.allocate(8192);
+        int[] offsets = new int[edits.size()];
+        int i = 0;
+        int chars = 0;
+        for (Edit edit : edits.values()) {
+            while (chars < edit.start) {
+                out.clear();
+                out.limit(Math.min(out.capacity(), edit.start - chars));
+                CoderResult result = decoder.decode(in, out, false);
+                if (result.isError() || out.position() == 0) {
+                    return null;
+                }
+                chars += out.position();
+            }
+            offsets[i++] = in.position();
+            // 被替换的是 ASCII，核对后直接跳过这些字节
+            int length = edit.end - edit.start;
+            if (in.position() + length > original.length) {
+                return null;
+            }
+            in.position(in.position() + length);
+            chars += length;
+        }
+        return offsets;
+    }
+
+    /**
+     * 与 BufferedReader.readLine() 相同，\n、\r、\r\n 都是行尾
+     *
+     * @return from 所在行的结束位置(不含行尾)
+     */
+    public static int lineEnd(CharSequence text, int from) {
+        int i = from;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param lineEnd {@link #lineEnd} 的返回值
+     * @return 下一行的开始位置
+     */
+    public static int nextLine(CharSequence text, int lineEnd) {
+        if (lineEnd < text.length() && text.charAt(lineEnd) == '\r') {
+            lineEnd++;
+        }
+        if (lineEnd < text.length() && text.charAt(lineEnd) == '\n') {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    private static boolean is_ascii(CharSequence s) {
+        return is_ascii(s, 0, s.length());
+    }
+
+    private static boolean is_ascii(CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 各替换，用于日志
+     */
+    @Override
+    public String toString() {
+        List<String> list = new ArrayList<>(edits.size());
+        for (Edit edit : edits.values()) {
+            list.add("[" + edit.start + "," + edit.end + ")->" + edit.replacement);
+        }
+        return list.toString();
+    }
+}
@@ -21,6 +21,11 @@ class AnimReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
     @Override
     String getJavaRegex() {
         return "(R(\\s*?)\\.(\\s*?)anim(\\s*?)\\.(\\s*?))(\\w+)"
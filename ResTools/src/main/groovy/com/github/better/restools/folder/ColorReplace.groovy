@@ -21,6 +21,11 @@ class ColorReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
     @Override
     String getJavaRegex() {
         return "(R(\\s*?)\\.(\\s*?)color(\\s*?)\\.(\\s*?))(\\w+)"
@@ -21,6 +21,11 @@ class DrawableReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
     @Override
     String getJavaRegex() {
         return "(R(\\s*?)\\.(\\s*?)drawable(\\s*?)\\.(\\s*?))(\\w+)"
@@ -3,8 +3,14 @@ package com.github.better.restools.folder
 import com.github.better.restools.ResToolsConfiguration
 import com.github.better.restools.Tools
 import com.github.better.restools.base.BaseFolderResReplace
+import com.github.better.restools.engine.ByteText
+import com.github.better.restools.engine.RenameEngine
+import com.github.better.restools.engine.ReplaceRule
+import com.github.better.restools.engine.SpliceWriter
 import com.kanzhun.resformat.ReadTextCode
 
+import java.nio.charset.Charset
+import java.nio.file.Files
 import java.util.regex.Matcher
 
 
@@ -15,6 +21,7 @@ public class LayoutReplace extends BaseFolderResReplace {
 
     private def final DIR_FILTER = new Tools.DirNamePrefixFilter("layout")
     private def final RES_TYPE_NAME = "layout"
+    private static final String KT_SYNTHETIC_REGEX = "(synthetic.main\\.)(\\w+)(\\.)"
 
     LayoutReplace(ResToolsConfiguration config) {
         super(config)
@@ -25,6 +32,11 @@ public class LayoutReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
     @Override
     String getJavaRegex() {
         // group 6 为名字
@@ -77,6 +89,13 @@ public class LayoutReplace extends BaseFolderResReplace {
     }
 
 
+    @Override
+    protected void addRules(RenameEngine engine, Set<String> resNameSet) {
+        super.addRules(engine, resNameSet)
+        // kt synthetic 导入，见 handleKtSrcFileLayout
+        engine.addSrcRule(new ReplaceRule(RES_TYPE_NAME, KT_SYNTHETIC_REGEX, 2, resNameSet, null, true))
+    }
+
     /**
      * kt 文件特殊处理，layout 导入包时，需要重新替换，如：
      *     import  kotlinx.android.synthetic.main.activity_main.*
@@ -98,26 +117,23 @@ public class LayoutReplace extends BaseFolderResReplace {
     }
 
     private void handleKtSrcFileLayout(file, set) {
-        def regex = "(synthetic.main\\.)(\\w+)(\\.)"
-        String code_version = ReadTextCode.getJavaEncode(file.getAbsolutePath());
+        byte[] bytes = Files.readAllBytes(file.toPath())
+        String code_version = ReadTextCode.detect(file, bytes).getCharsetName()    // 只读取一次文件，按字节检测编码
+        Charset charset = Charset.forName(code_version)
 
-        String fileContent = file.getText(code_version)              // every file is a text file
-        StringBuffer sb = new StringBuffer()             // result content
-        Matcher matcher = fileContent =~ regex
+        CharSequence fileContent = ByteText.textOf(bytes, charset)     // UTF-8 等直接按字节匹配，否则解码
+        SpliceWriter edits = new SpliceWriter()             // 要替换的资源名
+        Matcher matcher = Tools.pattern(KT_SYNTHETIC_REGEX).matcher(fileContent)
         while (matcher.find()) {
             String oldResName = matcher.group(2)   // the old res name
             if (set.contains(oldResName)) {               // 本模块中包含的资源名，才替换
-                String newResName = config.new_prefix + oldResName
-                if (oldResName.startsWith(config.old_prefix)) {     // 替换掉旧的前缀
-                    newResName = config.new_prefix + oldResName.substring(config.old_prefix.length())
-                }
-                matcher.appendReplacement(sb, "\$1$newResName\$3") // 拼接 保留$1$3分组,替换$2分组
+                edits.add(matcher.start(2), matcher.end(2), newResName(oldResName)) // 保留$1$3分组,替换$2分组
             }
         }
         // 修改了文件时，才写入文件
-        if (sb.length() > 0) {
-            matcher.appendTail(sb)              // 添加结尾
-            file.setText(sb.toString(),code_version)           // 写回文件
+        if (!edits.isEmpty()) {
+            edits.write(file, bytes, fileContent, charset)   // 写回文件，未替换的字节不变
+            ReadTextCode.fileWritten(file, code_version)     // 编码未变，更新编码缓存
         }
     }
 }
@@ -23,6 +23,16 @@ class MenuReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
+    @Override
+    boolean isXmlReplaced() {
+        return false    // res 目录中没有引用，不替换
+    }
+
     @Override
     String getJavaRegex() {
         return "(R(\\s*?)\\.(\\s*?)menu(\\s*?)\\.(\\s*?))(\\w+)"
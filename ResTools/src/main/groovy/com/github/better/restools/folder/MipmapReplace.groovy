@@ -21,6 +21,11 @@ class MipmapReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
     @Override
     String getJavaRegex() {
         return "(R(\\s*?)\\.(\\s*?)mipmap(\\s*?)\\.(\\s*?))(\\w+)"
@@ -21,6 +21,16 @@ class XmlReplace extends BaseFolderResReplace {
         return RES_TYPE_NAME
     }
 
+    @Override
+    FilenameFilter getDirFilter() {
+        return DIR_FILTER
+    }
+
+    @Override
+    FilenameFilter getXmlDirFilter() {
+        return DIR_FILTER   // only replace xml folder
+    }
+
     @Override
     String getJavaRegex() {
         return "(R(\\s*?)\\.(\\s*?)xml(\\s*?)\\.(\\s*?))(\\w+)"
@@ -3,6 +3,8 @@ package com.github.better.restools.values
 import com.github.better.restools.ResToolsConfiguration
 import com.github.better.restools.Tools
 import com.github.better.restools.base.BaseReplace
+import com.github.better.restools.engine.RenameEngine
+import com.github.better.restools.engine.ReplaceRule
 
 import java.util.regex.Matcher
 
@@ -52,42 +54,50 @@ class ValuesReplace extends BaseReplace {
 
         string("(<string\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)",
                 "(R(\\s*?)\\.(\\s*?)string(\\s*?)\\.(\\s*?))(\\w+)",
-                "(@string/)(\\w+)"
+                "(@string/)(\\w+)",
+                "string"
         ),
 
         string_arrays("(<string-array\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)",
                 "(R(\\s*?)\\.(\\s*?)array(\\s*?)\\.(\\s*?))(\\w+)",
-                "(<string-array\\s+name\\s*=\\s*\\\")(.+?)(\\\">)"
+                "(<string-array\\s+name\\s*=\\s*\\\")(.+?)(\\\">)",
+                "array"
         ),
 
         color("(<color\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)",
                 "(R(\\s*?)\\.(\\s*?)color(\\s*?)\\.(\\s*?))(\\w+)",
-                "(@color/)(\\w+)"
+                "(@color/)(\\w+)",
+                "color"
         ),
 
         dimens("(<dimen\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)",
                 "(R(\\s*?)\\.(\\s*?)dimen(\\s*?)\\.(\\s*?))(\\w+)",
-                "(@dimen/)(\\w+)"
+                "(@dimen/)(\\w+)",
+                "dimen"
         ),
 
         bool("(<bool\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)",
                 "(R(\\s*?)\\.(\\s*?)bool(\\s*?)\\.(\\s*?))(\\w+)",
-                "(@bool/)(\\w+)"
+                "(@bool/)(\\w+)",
+                "bool"
         ),
 
         integer("(<integer\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)",
                 "(R(\\s*?)\\.(\\s*?)integer(\\s*?)\\.(\\s*?))(\\w+)",
-                "(@integer/)(\\w+)"
+                "(@integer/)(\\w+)",
+                "integer"
         ),
 
         attr("",
                 "",
-                ""
+                "",
+                "attr"
         ),
 
         style("(<style\\s+name\\s*=\\s*\\\")(.+?\\\")(.*>)",
                 "(R(\\s*?)\\.(\\s*?)style(\\s*?)\\.(\\s*?))(\\w+)",
-                "(@style/)(.+?\\\")"
+                "(@style/)(.+?\\\")",
+                "style"
         )
 
         /**
@@ -105,11 +115,17 @@ class ValuesReplace extends BaseReplace {
          * like:  <string name="empty_message">@string/empty_message</string>
          */
         String xml_ref_regex
+        /**
+         * R 中的类型名
+         * like: R.array.XXX 中的 array
+         */
+        String r_type
 
-        ValuesType(String xmlRegx, String javaRegx, String xml_ref_regex) {
+        ValuesType(String xmlRegx, String javaRegx, String xml_ref_regex, String r_type) {
             this.xml_Regx = xmlRegx
             this.java_Regx = javaRegx
             this.xml_ref_regex = xml_ref_regex
+            this.r_type = r_type
         }
     }
 
@@ -144,17 +160,52 @@ class ValuesReplace extends BaseReplace {
         }
     }
 
+    /**
+     * 供 RenameEngine 使用：登记各 values 类型的替换规则，不遍历文件，效果与 replaceValues 相同
+     * @param engine
+     * @param set
+     */
+    void collectRules(RenameEngine engine, Set<ValuesType> set) {
+        set.each { ValuesType type ->
+            switch (type) {
+                case ValuesType.string:
+                case ValuesType.color:
+                case ValuesType.dimens:
+                case ValuesType.bool:
+                case ValuesType.integer:
+                    Set<String> nameSet = getValueNameSet(type.xml_Regx)
+                    // 源码中的、xml中的名称、xml中的引用
+                    engine.addSrcReference(type.r_type, nameSet)
+                    engine.addResRule(new ReplaceRule(type.name(), type.xml_Regx, 2, nameSet))
+                    engine.addResRule(new ReplaceRule(type.name(), type.xml_ref_regex, 2, nameSet))
+                    break
+                case ValuesType.string_arrays:
+                    Set<String> arrayNameSet = getValueNameSet(type.xml_Regx)
+                    // array 引用没有实现
+                    engine.addSrcReference(type.r_type, arrayNameSet)
+                    engine.addResRule(new ReplaceRule(type.name(), type.xml_Regx, 2, arrayNameSet))
+                    break
+                case ValuesType.style:      // need implement
+                    style(type)
+                    break
+                case ValuesType.attr:       // need implement
+                    attr(type)
+                    break
+            }
+        }
+    }
+
     // 字符串
     private def strings(ValuesType valueType) {
         println("------------ replace strings resource (处理strings资源)")
         def stringNameSet = getValueNameSet(valueType.xml_Regx)
-        def java_regx = ~valueType.java_Regx
-        def xml_regx = ~valueType.xml_Regx
-        def xml_ref_regx = ~valueType.xml_ref_regex
+        def java_regx = Tools.pattern(valueType.java_Regx)
+        def xml_regx = Tools.pattern(valueType.xml_Regx)
+        def xml_ref_regx = Tools.pattern(valueType.xml_ref_regex)
         // 修改源码中的
         replaceSrcDir(srcDir, stringNameSet, java_regx)
         // 修改xml中的名称
-        replaceResDir(resDir, stringNameSet, xml_regx, null, true)
+        replaceResDir(resDir, stringNameSet, xml_regx, null)
         // 修改xml中的引用
         replaceResDir(resDir, stringNameSet, xml_ref_regx, null)
     }
@@ -163,27 +214,27 @@ class ValuesReplace extends BaseReplace {
     private def arrays(ValuesType valueType) {
         println("------------ replace string-array resource (处理 string-array 资源)")
         def nameSet = getValueNameSet(valueType.xml_Regx)
-        def java_regx = ~valueType.java_Regx
-        def xml_regx = ~valueType.xml_Regx
-        def xml_ref_regx = ~valueType.xml_ref_regex  // array 引用没有实现
+        def java_regx = Tools.pattern(valueType.java_Regx)
+        def xml_regx = Tools.pattern(valueType.xml_Regx)
+        def xml_ref_regx = Tools.pattern(valueType.xml_ref_regex)  // array 引用没有实现
 
         // 修改源码中的
         replaceSrcDir(srcDir, nameSet, java_regx)
         // 修改xml中的名称
-        replaceResDir(resDir, nameSet, xml_regx, null, true)
+        replaceResDir(resDir, nameSet, xml_regx, null)
     }
 
     // color
     private def color(ValuesType valueType) {
         println("------------ replace color resource (处理 color 资源)")
         def nameSet = getValueNameSet(valueType.xml_Regx)
-        def java_regx = ~valueType.java_Regx
-        def xml_regx = ~valueType.xml_Regx
-        def xml_ref_regx = ~valueType.xml_ref_regex
+        def java_regx = Tools.pattern(valueType.java_Regx)
+        def xml_regx = Tools.pattern(valueType.xml_Regx)
+        def xml_ref_regx = Tools.pattern(valueType.xml_ref_regex)
 
         replaceSrcDir(srcDir, nameSet, java_regx)
         // 修改xml中的名称
-        replaceResDir(resDir, nameSet, xml_regx, null, true)
+        replaceResDir(resDir, nameSet, xml_regx, null)
         // 修改xml中的引用
         replaceResDir(resDir, nameSet, xml_ref_regx, null)
     }
@@ -192,13 +243,13 @@ class ValuesReplace extends BaseReplace {
     private def dimens(ValuesType valueType) {
         println("------------ replace dimens resource (处理 dimens 资源")
         def nameSet = getValueNameSet(valueType.xml_Regx)
-        def java_regx = ~valueType.java_Regx
-        def xml_regx = ~valueType.xml_Regx
-        def xml_ref_regx = ~valueType.xml_ref_regex
+        def java_regx = Tools.pattern(valueType.java_Regx)
+        def xml_regx = Tools.pattern(valueType.xml_Regx)
+        def xml_ref_regx = Tools.pattern(valueType.xml_ref_regex)
 
         replaceSrcDir(srcDir, nameSet, java_regx)
         // 修改xml中的名称
-        replaceResDir(resDir, nameSet, xml_regx, null, true)
+        replaceResDir(resDir, nameSet, xml_regx, null)
         // 修改xml中的引用
         replaceResDir(resDir, nameSet, xml_ref_regx, null)
     }
@@ -208,13 +259,13 @@ class ValuesReplace extends BaseReplace {
         println("------------ replace bool resource (处理 bool 资源)")
 
         def nameSet = getValueNameSet(valueType.xml_Regx)
-        def java_regx = ~valueType.java_Regx
-        def xml_regx = ~valueType.xml_Regx
-        def xml_ref_regx = ~valueType.xml_ref_regex
+        def java_regx = Tools.pattern(valueType.java_Regx)
+        def xml_regx = Tools.pattern(valueType.xml_Regx)
+        def xml_ref_regx = Tools.pattern(valueType.xml_ref_regex)
 
         replaceSrcDir(srcDir, nameSet, java_regx)
         // 修改xml中的名称
-        replaceResDir(resDir, nameSet, xml_regx, null, true)
+        replaceResDir(resDir, nameSet, xml_regx, null)
         // 修改xml中的引用
         replaceResDir(resDir, nameSet, xml_ref_regx, null)
     }
@@ -224,13 +275,13 @@ class ValuesReplace extends BaseReplace {
         println("------------ replace integer resource (处理 integer 资源)")
 
         def nameSet = getValueNameSet(valueType.xml_Regx)
-        def java_regx = ~valueType.java_Regx
-        def xml_regx = ~valueType.xml_Regx
-        def xml_ref_regx = ~valueType.xml_ref_regex
+        def java_regx = Tools.pattern(valueType.java_Regx)
+        def xml_regx = Tools.pattern(valueType.xml_Regx)
+        def xml_ref_regx = Tools.pattern(valueType.xml_ref_regex)
 
         replaceSrcDir(srcDir, nameSet, java_regx)
         // 修改xml中的名称
-        replaceResDir(resDir, nameSet, xml_regx, null, true)
+        replaceResDir(resDir, nameSet, xml_regx, null)
         // 修改xml中的引用
         replaceResDir(resDir, nameSet, xml_ref_regx, null)
     }
@@ -251,8 +302,9 @@ class ValuesReplace extends BaseReplace {
      * 读取xml资源，获取values资源名称 set
      * @param xmlRegex
      */
-    private def getValueNameSet(xmlRegex) {
+    private def getValueNameSet(String xmlRegex) {
         Set<String> nameSet = new HashSet<>()     // 字符串
+        Matcher matcher = Tools.pattern(xmlRegex).matcher("")    // 每行复用同一个 Matcher
         // 1.获取所有values开头的文件夹
         File[] dirs = resDir.listFiles(DIR_FILTER)
         // 2.遍历文件夹下各个资源文件xml后缀，获取资源名称
@@ -260,7 +312,7 @@ class ValuesReplace extends BaseReplace {
             dir.eachFile { it ->
                 if (it.name.endsWith(".xml")) {
                     it.eachLine { line ->
-                        Matcher matcher = line =~ xmlRegex
+                        matcher.reset(line)
                         while (matcher.find()) {
                             nameSet.add(matcher.group(2))
                         }
@@ -0,0 +1,98 @@
+package com.kanzhun.resformat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Finds the end of a run of 7-bit bytes, for the ASCII and UTF-8 checks of
+ * {@link BytesReadTextCode} that spend nearly all their time stepping over
+ * ASCII.
+ * <p>
+ * Where the JVM reads a long from a buffer as cheaply as a byte the run is
+ * scanned eight bytes at a time (SWAR, SIMD within a register): one getLong,
+ * one mask test for a high bit and, where asked for, a zero-byte test per
+ * stop byte. The block holding the first non-matching byte and the tail
+ * shorter than eight bytes are scanned one byte at a time, so the result is
+ * exactly that of the byte loop.
+ * <p>
+ * Direct and mapped buffers read longs with a single unaligned load on every
+ * JVM. Heap buffers only do since Java 9; on Java 8 getLong assembles the
+ * long from eight byte reads, so heap buffers keep the byte loop there. On a
+ * 32-bit JVM a long is two registers and the byte loop is used throughout.
+ * -Drestools.encoding.swar=false forces the byte loop everywhere.
+ */
+final class AsciiRuns {
+
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private static final long LOW_BITS = 0x0101010101010101L;
+
+	private static final long ESC = 0x1B * LOW_BITS;
+
+	private static final long TILDE = '~' * LOW_BITS;
+
+	private static final boolean SWAR = !"false".equals(System
+			.getProperty("restools.encoding.swar"))
+			&& !"32".equals(System.getProperty("sun.arch.data.model"));
+
+	private static final boolean SWAR_HEAP = SWAR
+			&& !System.getProperty("java.specification.version", "").startsWith("1.");
+
+	private AsciiRuns() {
+	}
+
+	/**
+	 * @return the index of the first byte in [from, to) at or above 0x80, or
+	 *         to if there is none
+	 */
+	static int ascii_end(ByteBuffer rawtext, int from, int to) {
+		int i = from;
+		if (swar(rawtext)) {
+			while (i <= to - 8 && (rawtext.getLong(i) & HIGH_BITS) == 0) {
+				i += 8;
+			}
+		}
+		while (i < to && rawtext.get(i) >= 0) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the index of the first byte in [from, to) at or above 0x80, or
+	 *         that is ESC or '~', or to if there is none. ESC starts the
+	 *         ISO-2022 shifts and '~' the HZ ones, so the bytes before it are
+	 *         plain text in every encoding the detector knows.
+	 */
+	static int plain_end(ByteBuffer rawtext, int from, int to) {
+		int i = from;
+		if (swar(rawtext)) {
+			while (i <= to - 8) {
+				long word = rawtext.getLong(i);
+				if ((word & HIGH_BITS) != 0 || has_byte(word, ESC)
+						|| has_byte(word, TILDE)) {
+					break;
+				}
+				i += 8;
+			}
+		}
+		byte b;
+		while (i < to && (b = rawtext.get(i)) >= 0 && b != 0x1B && b != '~') {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return true if one of the eight bytes of word equals the byte repeated
+	 *         in pattern; exact, the borrow only ever flags bytes above a zero
+	 *         byte that is there
+	 */
+	private static boolean has_byte(long word, long pattern) {
+		long x = word ^ pattern;
+		return ((x - LOW_BITS) & ~x & HIGH_BITS) != 0;
+	}
+
+	private static boolean swar(ByteBuffer rawtext) {
+		return SWAR_HEAP || (SWAR && rawtext.isDirect());
+	}
+}
@@ -0,0 +1,1076 @@
+package com.kanzhun.resformat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class BytesReadTextCode extends Encoding {
+	// The GB, Big5, EUC-TW, KR and JP character frequency tables are not held
+	// here: every scorer takes the ones it needs from FrequencyTables, which
+	// loads a family on first use. A detector holds no per-instance scoring
+	// state and may be used by many threads at once.
+	public boolean debug;
+
+	// The XML declaration is only looked for this far into the file
+	static final int XML_DECLARATION_LIMIT = 256;
+
+	// Files this large are read into a heap array of their own instead of the
+	// pooled buffer, which would otherwise stay that large for the thread
+	static final int POOL_LIMIT = 1024 * 1024;
+
+	// Direct read buffer of each thread, grown up to POOL_LIMIT on demand
+	private static final ThreadLocal<ByteBuffer> READ_BUFFER = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(64 * 1024);
+		}
+	};
+
+	// Output of is_strict's decode checks, which only look at the result
+	private static final ThreadLocal<CharBuffer> DECODE_BUFFER = new ThreadLocal<CharBuffer>() {
+		@Override
+		protected CharBuffer initialValue() {
+			return CharBuffer.allocate(8 * 1024);
+		}
+	};
+
+	public BytesReadTextCode() {
+		super();
+		debug = false;
+	}
+
+	/**
+	 * public static void main(String argc1[]) { BytesReadTextCode sinodetector;
+	 * int result = OTHER; int i; sinodetector = new BytesReadTextCode(); String
+	 * argc=
+	 * "http://192.168.70.33/sp/ds.do?a=&b=1&c=10000&d=1000&e=1001&f=13800210500&g=0&h=&i=&j=1&k=46000"
+	 * ; // String argc="http://127.0.0.1/Test/t"; // for (i = 0; i <
+	 * argc.length; i++) { if (argc.startsWith("http://") == true) { try {
+	 * result = sinodetector.detectEncoding(new URL(argc)); } catch (Exception
+	 * e) { System.err.println("Bad URL " + e.toString()); } } else if
+	 * (argc.equals("-d")) { sinodetector.debug = true; } else { result =
+	 * sinodetector.detectEncoding(new File(argc)); }
+	 * System.out.println(nicename[result]); // } }
+	 */
+	/**
+	 * Function : detectEncoding Aruguments: URL Returns : One of the encodings
+	 * from the Encoding enumeration (GB2312, HZ, BIG5, EUC_TW, ASCII, or OTHER)
+	 * Description: This function looks at the URL contents and assigns it a
+	 * probability score for each encoding type. The encoding type with the
+	 * highest probability is returned.
+	 */
+	public int detectEncoding(URL testurl) {
+		byte[] rawtext = new byte[10000];
+		int bytesread = 0, byteoffset = 0;
+		int guess = OTHER;
+		InputStream chinesestream;
+		try {
+			chinesestream = testurl.openStream();
+			while ((bytesread = chinesestream.read(rawtext, byteoffset,
+					rawtext.length - byteoffset)) > 0) {
+				byteoffset += bytesread;
+			}
+			;
+			chinesestream.close();
+			guess = detectEncoding(rawtext);
+		} catch (Exception e) {
+			System.err.println("Error loading or using URL " + e.toString());
+			guess = -1;
+		}
+		return guess;
+	}
+
+	/**
+	 * Function : detectEncoding Aruguments: File Returns : One of the encodings
+	 * from the Encoding enumeration (GB2312, HZ, BIG5, EUC_TW, ASCII, or OTHER)
+	 * Description: This function looks at the file and assigns it a probability
+	 * score for each encoding type. The encoding type with the highest
+	 * probability is returned.
+	 */
+	public int detectEncoding(File testfile) {
+		return detectEncoding(testfile.toPath());
+	}
+
+	/**
+	 * Function : detectEncoding Aruguments: Path Returns : One of the encodings
+	 * from the Encoding enumeration Description: detectEncoding(ByteBuffer)
+	 * over the file, read by read_buffer: into the pooled direct buffer below
+	 * POOL_LIMIT, into a heap array of the file's size from there on.
+	 */
+	public int detectEncoding(Path testfile) {
+		return detectEncoding(read_buffer(testfile));
+	}
+
+	/**
+	 * Function : detect Aruguments: File Returns : EncodingResult Description:
+	 * Tiered detection over the file contents, see detect(byte[]).
+	 */
+	public EncodingResult detect(File testfile) {
+		return detect(testfile.toPath());
+	}
+
+	/**
+	 * Function : detect Aruguments: Path Returns : EncodingResult Description:
+	 * detect(ByteBuffer) over the file, read by read_buffer (see
+	 * detectEncoding(Path)).
+	 */
+	public EncodingResult detect(Path testfile) {
+		return detect(read_buffer(testfile));
+	}
+
+	/**
+	 * Function : detect Aruguments: File, SamplingPolicy Returns :
+	 * EncodingResult Description: Like detect(File), but a file larger than
+	 * the policy's sample size is only read in part: the prefix and a few
+	 * windows spread evenly over the rest, each cut so that no character is
+	 * split. If that sample is conclusive (see detect_sample) its
+	 * answer is returned with tier SAMPLED, otherwise the whole file is read
+	 * and scored after all.
+	 */
+	public EncodingResult detect(File testfile, SamplingPolicy policy) {
+		long filelen = testfile.length();
+		if (!policy.isSampling() || filelen <= policy.getSampleBytes()) {
+			return detect(testfile);
+		}
+		byte[] sample = read_sample(testfile, filelen, policy);
+		if (sample != null) {
+			EncodingResult result = detect_sample(sample,
+					policy.getConfidenceMargin());
+			if (result != null) {
+				return result;
+			}
+		}
+		return detect(testfile);
+	}
+
+	/**
+	 * Function : detect Aruguments: File, SamplingPolicy, CandidateEncodings
+	 * Returns : EncodingResult Description: detect(File, SamplingPolicy) when
+	 * candidates is not restricted. Otherwise detect(ByteBuffer,
+	 * CandidateEncodings) over the whole file, since a strict decode check is
+	 * only conclusive over all of it.
+	 */
+	public EncodingResult detect(File testfile, SamplingPolicy policy,
+			CandidateEncodings candidates) {
+		if (!candidates.isRestricted()) {
+			return detect(testfile, policy);
+		}
+		return detect(read_buffer(testfile.toPath()), candidates);
+	}
+
+	/*
+	 * Function: read_sample Arguments: file longer than the sample size of
+	 * policy, its length, policy Returns : prefix followed by the windows,
+	 * each cut to whole characters (see is_boundary), or null if the prefix
+	 * holds no boundary or the file could not be read
+	 */
+	byte[] read_sample(File testfile, long filelen, SamplingPolicy policy) {
+		int prefix = policy.getPrefixBytes();
+		int windows = policy.getWindowCount();
+		int window = policy.getWindowBytes();
+		byte[] sample = new byte[policy.getSampleBytes()];
+		int samplelen = 0;
+		try (RandomAccessFile file = new RandomAccessFile(testfile, "r")) {
+			file.readFully(sample, 0, prefix);
+			// Cut the prefix after its last boundary
+			int end = last_boundary(sample, 0, prefix);
+			if (end < 0) {
+				return null;
+			}
+			samplelen = end + 1;
+			long stride = windows > 0 ? (filelen - prefix) / windows : 0;
+			for (int k = 0; k < windows; k++) {
+				// Windows end at the end of their stride, the last one at EOF
+				long start = prefix + (k + 1) * stride - window;
+				if (k == windows - 1) {
+					start = filelen - window;
+				}
+				file.seek(start);
+				file.readFully(sample, samplelen, window);
+				// Keep only what lies between the first and the last boundary
+				// of the window; the end of the file is a boundary too
+				int first = next_boundary(sample, samplelen, samplelen + window);
+				end = start + window == filelen ? samplelen + window - 1
+						: last_boundary(sample, samplelen, samplelen + window);
+				if (first < 0 || end <= first) {
+					continue;
+				}
+				System.arraycopy(sample, first + 1, sample, samplelen, end - first);
+				samplelen += end - first;
+			}
+		} catch (Exception e) {
+			System.err.println("Error: " + e);
+			return null;
+		}
+		byte[] rawtext = new byte[samplelen];
+		System.arraycopy(sample, 0, rawtext, 0, samplelen);
+		return rawtext;
+	}
+
+	/*
+	 * A byte below 0x40 is never part of a multi-byte character in any of the
+	 * ASCII compatible encodings scored here (trail bytes start at 0x40), so
+	 * the sample may be cut right after it. ESC is left out to keep ISO-2022
+	 * escape sequences whole.
+	 */
+	private static boolean is_boundary(byte b) {
+		return b >= 0 && b < 0x40 && b != 0x1B;
+	}
+
+	private static int next_boundary(byte[] rawtext, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (is_boundary(rawtext[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int last_boundary(byte[] rawtext, int from, int to) {
+		for (int i = to - 1; i >= from; i--) {
+			if (is_boundary(rawtext[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * Function: read_buffer Argument: file Returns : the whole file, read into
+	 * a heap array of its own if it has at least POOL_LIMIT bytes, otherwise
+	 * into the calling thread's pooled direct buffer, which stays valid until
+	 * the thread reads its next file. An unreadable file gives an empty buffer.
+	 * Files are never mapped: a mapping is only released by the GC, and until
+	 * then the file cannot be truncated on Windows, which rewriting it after
+	 * detection does.
+	 */
+	ByteBuffer read_buffer(Path testfile) {
+		try (FileChannel channel = FileChannel.open(testfile,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= POOL_LIMIT) {
+				// Files beyond 2 GiB are only scored up to there
+				ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size,
+						Integer.MAX_VALUE - 8));
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				}
+				buffer.flip();
+				return buffer;
+			}
+			ByteBuffer buffer = READ_BUFFER.get();
+			if (buffer.capacity() < size) {
+				buffer = ByteBuffer.allocateDirect((int) size);
+				READ_BUFFER.set(buffer);
+			}
+			buffer.clear();
+			buffer.limit((int) size);
+			// read() may return fewer bytes than asked for
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+			}
+			buffer.flip();
+			// Read-only, so the scorers' get() calls only ever see heap
+			// buffers (large files, byte arrays) and read-only direct ones
+			return buffer.asReadOnlyBuffer();
+		} catch (Exception e) {
+			System.err.println("Error: " + e);
+			return ByteBuffer.allocate(0);
+		}
+	}
+
+	/**
+	 * Function : detectEncoding Aruguments: byte array Returns : One of the
+	 * encodings from the Encoding enumeration (GB2312, HZ, BIG5, EUC_TW, ASCII,
+	 * or OTHER) Description: This function looks at the byte array and assigns
+	 * it a probability score for each encoding type. The encoding type with the
+	 * highest probability is returned.
+	 */
+	public int detectEncoding(byte[] rawtext) {
+		return detectEncoding(ByteBuffer.wrap(rawtext));
+	}
+
+	/**
+	 * Function : detectEncoding Aruguments: ByteBuffer Returns : One of the
+	 * encodings from the Encoding enumeration Description: detectEncoding(byte[])
+	 * over the bytes between the buffer's position and limit, which are left
+	 * unchanged. Works on heap, direct and mapped buffers alike without
+	 * copying them.
+	 */
+	public int detectEncoding(ByteBuffer buffer) {
+		ByteBuffer rawtext = buffer.slice();
+		int[] scores;
+		int index, maxscore = 0;
+		int encoding_guess = OTHER;
+		// Assign Scores, all encodings in a single pass over the array
+		scores = fused_scores(rawtext);
+		// Tabulate Scores
+		for (index = 0; index < TOTALTYPES; index++) {
+			if (debug)
+				System.err.println("Encoding " + nicename[index] + " score "
+						+ scores[index]);
+			if (scores[index] > maxscore) {
+				encoding_guess = index;
+				maxscore = scores[index];
+			}
+		}
+		// Return OTHER if nothing scored above 50
+		if (maxscore <= 50) {
+			encoding_guess = OTHER;
+		}
+		return encoding_guess;
+	}
+
+	/**
+	 * Function : fused_scores Aruguments: byte buffer Returns : score of every
+	 * encoding, indexed like the Encoding constants Description: Computes the
+	 * same scores as the former one-pass-per-encoding *_probability functions
+	 * (kept for the tests as ReferenceScorers), but walks the buffer (index 0 up to its limit) only once. Every scorer keeps its own cursor,
+	 * so it still steps over single- and multi-byte characters exactly as its
+	 * stand-alone version does. GB2312, GBK, GB18030, Big5, EUC-KR, CP949 and EUC-JP always step
+	 * the same way and share one cursor. Scorers whose result is already
+	 * settled stop early: UTF-8 once even an all valid remainder cannot bring
+	 * it above 95, ASCII once its score reached 0 and ISO-2022-KR/JP once
+	 * their escape sequence was seen. While every cursor is on the same byte,
+	 * runs of plain ASCII are skipped with AsciiRuns.plain_end.
+	 */
+	int[] fused_scores(ByteBuffer rawtext) {
+		short[] GBFreq = FrequencyTables.gb();
+		short[] GBKFreq = FrequencyTables.gbk();
+		short[] Big5Freq = FrequencyTables.big5();
+		short[] EUC_TWFreq = FrequencyTables.euc_tw();
+		short[] KRFreq = FrequencyTables.kr();
+		short[] JPFreq = FrequencyTables.jp();
+		int rawtextlen = rawtext.limit();
+		int i, c, c1, row, column;
+		// GB2312, GBK, GB18030, Big5, EUC-KR, CP949, EUC-JP
+		int pairnext = 0, dbchars = 1;
+		int gbchars = 1, gbkchars = 1, gb18030chars = 1, bfchars = 1;
+		int krchars = 1, cp949chars = 1, jpchars = 1;
+		long gbfreq = 0, gbkfreq = 0, gb18030freq = 0, bffreq = 0;
+		long krfreq = 0, cp949freq = 0, jpfreq = 0;
+		long gbtotal = 1, gbktotal = 1, gb18030total = 1, bftotal = 1;
+		long krtotal = 1, cp949total = 1, jptotal = 1;
+		// Shift-JIS
+		int sjisnext = 0, sjisdbchars = 1, sjischars = 1, adjust;
+		long sjisfreq = 0, sjistotal = 1;
+		// EUC-TW
+		int twnext = 0, twdbchars = 1, cnschars = 1;
+		long cnsfreq = 0, cnstotal = 1;
+		// UTF-8
+		int utf8next = 0, goodbytes = 0, asciibytes = 0;
+		boolean utf8live = true;
+		// ASCII
+		int asciiscore = 75;
+		// HZ
+		int hznext = 0, hzchars = 0, hzdbchars = 1, hzstart = 0, hzend = 0;
+		long hzfreq = 0, hztotal = 1;
+		boolean inhz = false;
+		// ISO-2022-CN, cnmode is 0 outside, 'A' in GB and 'G' in CNS text
+		int cnnext = 0, isodbchars = 1, isochars = 1, cnmode = 0;
+		long isofreq = 0, isototal = 1;
+		// ISO-2022-KR, ISO-2022-JP
+		boolean iso2022kr = false, iso2022jp = false;
+
+		for (i = 0; i < rawtextlen; i++) {
+			c = rawtext.get(i) & 0xFF;
+			if (c < 0x80 && c != '~' && c != 0x1B && !inhz && cnmode == 0) {
+				// Plain ASCII byte: every scorer standing on it just steps
+				// over it
+				if (pairnext == i && sjisnext == i && twnext == i
+						&& (utf8next == i || !utf8live) && hznext == i
+						&& cnnext == i) {
+					// All of them do, so step over the whole plain run
+					int end = AsciiRuns.plain_end(rawtext, i + 1, rawtextlen);
+					asciibytes += end - i;
+					pairnext = sjisnext = twnext = utf8next = hznext = cnnext = end;
+					i = end - 1;
+					continue;
+				}
+				if (pairnext == i) {
+					pairnext++;
+				}
+				if (sjisnext == i) {
+					sjisnext++;
+				}
+				if (twnext == i) {
+					twnext++;
+				}
+				if (utf8next == i) {
+					asciibytes++;
+					utf8next++;
+				}
+				if (hznext == i) {
+					hznext++;
+				}
+				if (cnnext == i) {
+					cnnext++;
+				}
+				continue;
+			}
+			c1 = i + 1 < rawtextlen ? rawtext.get(i + 1) & 0xFF : -1;
+
+			if (asciiscore > 0 && (c >= 0x80 || c == 0x1B)) {
+				asciiscore -= 5;
+			}
+
+			if (pairnext == i && i < rawtextlen - 1) {
+				if (c < 0x80) {
+					pairnext = i + 1;
+				} else {
+					dbchars++;
+					// Both bytes in 0xA1 - 0xFE: a cell of the 94 x 94 GB2312,
+					// KS C 5601 and JIS X 0208 tables, all indexed alike
+					boolean a1pair = in_range(c, 0xA1, 0xFE)
+							&& in_range(c1, 0xA1, 0xFE);
+					int cell = (c - 0xA1) * 94 + (c1 - 0xA1);
+					int freq;
+					if (a1pair && c <= 0xF7) {
+						// Original GB range, scored alike by GB2312, GBK and
+						// GB18030
+						freq = GBFreq[cell];
+						if (freq == 0 && in_range(c, 0xA1 + 15, 0xA1 + 54)) {
+							freq = 200;
+						}
+						gbchars++;
+						gbtotal += 500;
+						gbfreq += freq;
+						gbkchars++;
+						gbktotal += 500;
+						gbkfreq += freq;
+						gb18030chars++;
+						gb18030total += 500;
+						gb18030freq += freq;
+					} else if (in_range(c, 0x81, 0xFE)
+							&& (in_range(c1, 0x80, 0xFE) || in_range(c1, 0x40, 0x7E))) {
+						// Extended GB range
+						freq = GBKFreq[(c - 0x81) * FrequencyTables.GBK_COLUMNS
+								+ (c1 - 0x40)];
+						gbkchars++;
+						gbktotal += 500;
+						gbkfreq += freq;
+						gb18030chars++;
+						gb18030total += 500;
+						gb18030freq += freq;
+					} else if (in_range(c, 0x81, 0xFE) && i + 3 < rawtextlen
+							&& in_range(c1, 0x30, 0x39)
+							&& in_range(rawtext.get(i + 2) & 0xFF, 0x81, 0xFE)
+							&& in_range(rawtext.get(i + 3), 0x30, 0x39)) {
+						// GB18030 four byte sequence
+						gb18030chars++;
+					}
+					// Big5
+					boolean lowtrail = in_range(c1, 0x40, 0x7E);
+					if (in_range(c, 0xA1, 0xF9)
+							&& (lowtrail || in_range(c1, 0xA1, 0xFE))) {
+						bfchars++;
+						bftotal += 500;
+						row = c - 0xA1;
+						column = c1 - (lowtrail ? 0x40 : 0x61);
+						freq = Big5Freq[row * FrequencyTables.BIG5_COLUMNS + column];
+						if (freq != 0) {
+							bffreq += freq;
+						} else if (in_range(row, 3, 37)) {
+							bffreq += 200;
+						}
+					}
+					// EUC-KR, CP949 and EUC-JP
+					if (a1pair) {
+						freq = KRFreq[cell];
+						krchars++;
+						krtotal += 500;
+						krfreq += freq;
+						cp949chars++;
+						cp949total += 500;
+						cp949freq += freq;
+						jpchars++;
+						jptotal += 500;
+						jpfreq += JPFreq[cell];
+					} else if (in_range(c, 0x81, 0xFE)
+							&& (in_range(c1, 0x41, 0x5A) || in_range(c1, 0x61, 0x7A) || in_range(c1, 0x81, 0xFE))) {
+						cp949chars++;
+						cp949total += 500;
+					}
+					pairnext = i + 2;
+				}
+			}
+
+			if (sjisnext == i && i < rawtextlen - 1) {
+				sjisnext = i + 1;
+				if (c >= 0x80) {
+					sjisdbchars++;
+					if ((in_range(c, 0x81, 0x9F) || in_range(c, 0xE0, 0xEF))
+							&& (in_range(c1, 0x40, 0x7E) || in_range(c1, 0x80, 0xFC))) {
+						sjischars++;
+						sjistotal += 500;
+						// the original scorer added 256 to the trail byte, so a
+						// 7-bit trail byte never adjusts
+						adjust = in_range(c1, 0x80, 0x9E) ? 1 : 0;
+						if (c < 0xA0) {
+							row = ((c - 0x70) << 1) - adjust;
+						} else {
+							row = ((c - 0xB0) << 1) - adjust;
+						}
+						row -= 0x20;
+						// the original scorer always looked up column 0x20
+						if (row < 94) {
+							sjisfreq += JPFreq[row * FrequencyTables.JP_COLUMNS + 0x20];
+						}
+						sjisnext = i + 2;
+					}
+				}
+			}
+
+			if (twnext == i && i < rawtextlen - 1) {
+				twnext = i + 1;
+				if (c >= 0x80) {
+					twdbchars++;
+					if (i + 3 < rawtextlen && c == 0x8E
+							&& in_range(c1, 0xA1, 0xB0)
+							&& in_range(rawtext.get(i + 2) & 0xFF, 0xA1, 0xFE)
+							&& in_range(rawtext.get(i + 3) & 0xFF, 0xA1, 0xFE)) {
+						// Planes 1 - 16, less frequent chars so ignore freq
+						cnschars++;
+						twnext = i + 4;
+					} else if (in_range(c, 0xA1, 0xFE) && in_range(c1, 0xA1, 0xFE)) {
+						// Plane 1
+						cnschars++;
+						cnstotal += 500;
+						row = c - 0xA1;
+						column = c1 - 0xA1;
+						int freq = EUC_TWFreq[row * FrequencyTables.EUC_TW_COLUMNS
+								+ column];
+						if (freq != 0) {
+							cnsfreq += freq;
+						} else if (in_range(row, 35, 92)) {
+							cnsfreq += 150;
+						}
+						twnext = i + 2;
+					}
+				}
+			}
+
+			if (utf8live && utf8next == i) {
+				if (c < 0x80) {
+					asciibytes++;
+					utf8next = i + 1;
+				} else if (in_range(c, 0xC0, 0xDF) && in_range(c1, 0x80, 0xBF)) {
+					goodbytes += 2;
+					utf8next = i + 2;
+				} else if (in_range(c, 0xE0, 0xEF) && i + 2 < rawtextlen
+						&& in_range(c1, 0x80, 0xBF)
+						&& in_range(rawtext.get(i + 2) & 0xFF, 0x80, 0xBF)) {
+					goodbytes += 3;
+					utf8next = i + 3;
+				} else {
+					utf8next = i + 1;
+					// Bad byte: give up once even a remainder of only valid
+					// sequences could not lift the score above 95
+					long seen = i + 1 - asciibytes;
+					long rest = rawtextlen - utf8next;
+					if (100 * (goodbytes + rest) < 95 * (seen + rest)) {
+						utf8live = false;
+					}
+				}
+			}
+
+			if (hznext == i) {
+				hznext = i + 1;
+				if (inhz) {
+					if (i >= rawtextlen - 1) {
+						inhz = false;
+					} else if (c == 0x0A || c == 0x0D) {
+						inhz = false;
+					} else if (c == '~' && c1 == '}') {
+						hzend++;
+						inhz = false;
+						hznext = i + 2;
+					} else {
+						if (in_range(c, 0x21, 0x77) && in_range(c1, 0x21, 0x77)) {
+							hzchars += 2;
+							row = c - 0x21;
+							column = c1 - 0x21;
+							hztotal += 500;
+							int freq = GBFreq[row * FrequencyTables.GB_COLUMNS + column];
+							if (freq != 0) {
+								hzfreq += freq;
+							} else if (in_range(row, 15, 54)) {
+								hzfreq += 200;
+							}
+						}
+						hzdbchars += 2;
+						hznext = i + 2;
+					}
+				} else if (c == '~' && c1 == '{') {
+					hzstart++;
+					inhz = true;
+					hznext = i + 2;
+				} else if (c == '~' && (c1 == '}' || c1 == '~')) {
+					if (c1 == '}') {
+						hzend++;
+					}
+					hznext = i + 2;
+				}
+			}
+
+			if (cnnext == i) {
+				cnnext = i + 1;
+				if (cnmode != 0 && c != 0x1B) {
+					isodbchars++;
+					int hi = cnmode == 'A' ? 0x77 : 0x7E;
+					if (in_range(c, 0x21, hi) && in_range(c1, 0x21, hi)) {
+						isochars++;
+						isototal += 500;
+						// GB2312 and CNS plane 1 tables are both 94 x 94
+						int cell = (c - 0x21) * 94 + (c1 - 0x21);
+						row = c - 0x21;
+						if (cnmode == 'A') {
+							if (GBFreq[cell] != 0) {
+								isofreq += GBFreq[cell];
+							} else if (in_range(row, 15, 54)) {
+								isofreq += 200;
+							}
+						} else {
+							if (EUC_TWFreq[cell] != 0) {
+								isofreq += EUC_TWFreq[cell];
+							} else if (in_range(row, 35, 92)) {
+								isofreq += 150;
+							}
+						}
+						cnnext = i + 2;
+					}
+				} else if (cnmode != 0 || (c == 0x1B && i + 3 < rawtextlen)) {
+					// ESC ending a GB or CNS run, or ESC in plain text
+					if (cnmode == 0 && c1 == 0x24 && rawtext.get(i + 2) == 0x29
+							&& (rawtext.get(i + 3) == 0x41 || rawtext.get(i + 3) == 0x47)) {
+						cnmode = rawtext.get(i + 3);
+						cnnext = i + 4;
+					} else {
+						cnmode = 0;
+						if (i + 2 < rawtextlen && c1 == 0x28
+								&& rawtext.get(i + 2) == 0x42) {
+							cnnext = i + 3;
+						}
+					}
+				}
+			}
+
+			if (c == 0x1B) {
+				if (i + 3 < rawtextlen && c1 == '$' && rawtext.get(i + 2) == ')'
+						&& rawtext.get(i + 3) == 'C') {
+					iso2022kr = true;
+				}
+				if (i + 2 < rawtextlen && c1 == '$' && rawtext.get(i + 2) == 'B') {
+					iso2022jp = true;
+				}
+			}
+		}
+
+		int[] scores = new int[TOTALTYPES];
+		float rangeval, freqval;
+		float dbfloat = (float) dbchars;
+		rangeval = 50 * ((float) gbchars / dbfloat);
+		freqval = 50 * ((float) gbfreq / (float) gbtotal);
+		scores[GB2312] = (int) (rangeval + freqval);
+		rangeval = 50 * ((float) gbkchars / dbfloat);
+		freqval = 50 * ((float) gbkfreq / (float) gbktotal);
+		scores[GBK] = (int) (rangeval + freqval) - 1;
+		rangeval = 50 * ((float) gb18030chars / dbfloat);
+		freqval = 50 * ((float) gb18030freq / (float) gb18030total);
+		scores[GB18030] = (int) (rangeval + freqval) - 1;
+		rangeval = 50 * ((float) bfchars / dbfloat);
+		freqval = 50 * ((float) bffreq / (float) bftotal);
+		scores[BIG5] = (int) (rangeval + freqval);
+		rangeval = 50 * ((float) krchars / dbfloat);
+		freqval = 50 * ((float) krfreq / (float) krtotal);
+		scores[EUC_KR] = (int) (rangeval + freqval);
+		rangeval = 50 * ((float) cp949chars / dbfloat);
+		freqval = 50 * ((float) cp949freq / (float) cp949total);
+		scores[CP949] = (int) (rangeval + freqval);
+		rangeval = 50 * ((float) jpchars / dbfloat);
+		freqval = 50 * ((float) jpfreq / (float) jptotal);
+		scores[EUC_JP] = (int) (rangeval + freqval);
+		rangeval = 50 * ((float) sjischars / (float) sjisdbchars);
+		freqval = 50 * ((float) sjisfreq / (float) sjistotal);
+		scores[SJIS] = (int) (rangeval + freqval) - 1;
+		rangeval = 50 * ((float) cnschars / (float) twdbchars);
+		freqval = 50 * ((float) cnsfreq / (float) cnstotal);
+		scores[CNS11643] = (int) (rangeval + freqval);
+		rangeval = 50 * ((float) isochars / (float) isodbchars);
+		freqval = 50 * ((float) isofreq / (float) isototal);
+		scores[ISO2022CN] = (int) (rangeval + freqval);
+		if (hzstart > 4) {
+			rangeval = 50;
+		} else if (hzstart > 1) {
+			rangeval = 41;
+		} else if (hzstart > 0) {
+			rangeval = 39;
+		} else {
+			rangeval = 0;
+		}
+		freqval = 50 * ((float) hzfreq / (float) hztotal);
+		scores[HZ] = (int) (rangeval + freqval);
+		if (utf8live && asciibytes != rawtextlen) {
+			int score = (int) (100 * ((float) goodbytes / (float) (rawtextlen - asciibytes)));
+			if (score > 98 || (score > 95 && goodbytes > 30)) {
+				scores[UTF8] = score;
+			}
+		}
+		scores[UNICODE] = bom_encoding(rawtext) == UNICODE ? 100 : 0;
+		scores[ISO2022KR] = iso2022kr ? 100 : 0;
+		scores[ISO2022JP] = iso2022jp ? 100 : 0;
+		scores[ASCII] = asciiscore > 0 ? asciiscore : 0;
+		return scores;
+	}
+
+	/*
+	 * Function: in_range Arguments: value, bounds Returns : lo <= c && c <= hi.
+	 * Inlined with constant bounds, C2 folds the two comparisons into a single
+	 * unsigned compare of c - lo, so each range check costs one branch.
+	 */
+	private static boolean in_range(int c, int lo, int hi) {
+		return lo <= c && c <= hi;
+	}
+
+	/**
+	 * Function : detect Aruguments: byte array Returns : EncodingResult
+	 * Description: Tiered detection, cheapest tier first. The first tier that
+	 * is conclusive answers: byte order mark, encoding of the XML declaration,
+	 * pure ASCII, strictly valid UTF-8. Only when none of them applies is the
+	 * array scored against every encoding by detectEncoding(byte[]).
+	 */
+	public EncodingResult detect(byte[] rawtext) {
+		return detect(ByteBuffer.wrap(rawtext));
+	}
+
+	/**
+	 * Function : detect Aruguments: ByteBuffer Returns : EncodingResult
+	 * Description: detect(byte[]) over the bytes between the buffer's position
+	 * and limit, which are left unchanged. Works on heap, direct and mapped
+	 * buffers alike without copying them.
+	 */
+	public EncodingResult detect(ByteBuffer buffer) {
+		ByteBuffer rawtext = buffer.slice();
+		EncodingResult result = marked_encoding(rawtext);
+		if (result != null) {
+			return result;
+		}
+		if (is_strict_utf8(rawtext)) {
+			return new EncodingResult(javaname[UTF8], EncodingResult.Tier.UTF8);
+		}
+		return new EncodingResult(javaname[detectEncoding(rawtext)],
+				EncodingResult.Tier.STATISTICAL);
+	}
+
+	/**
+	 * Function : detect Aruguments: ByteBuffer, CandidateEncodings Returns :
+	 * EncodingResult Description: detect(ByteBuffer) when candidates is not
+	 * restricted. Otherwise the byte order mark, XML declaration and ASCII
+	 * tiers are followed by a strict decode check (see is_strict) in each
+	 * candidate, in order; the first that decodes answers with tier
+	 * CANDIDATE. If none does, the statistical guess is returned with tier
+	 * UNMATCHED.
+	 */
+	public EncodingResult detect(ByteBuffer buffer, CandidateEncodings candidates) {
+		if (!candidates.isRestricted()) {
+			return detect(buffer);
+		}
+		ByteBuffer rawtext = buffer.slice();
+		EncodingResult result = marked_encoding(rawtext);
+		if (result != null) {
+			return result;
+		}
+		for (Charset charset : candidates.getCharsets()) {
+			if (is_strict(rawtext, charset)) {
+				return new EncodingResult(charset.name(),
+						EncodingResult.Tier.CANDIDATE);
+			}
+		}
+		return new EncodingResult(javaname[detectEncoding(rawtext)],
+				EncodingResult.Tier.UNMATCHED);
+	}
+
+	/*
+	 * Function: marked_encoding Argument: byte buffer Returns : result of the
+	 * byte order mark, XML declaration or ASCII tier, the first that is
+	 * conclusive, or null if none is
+	 */
+	private EncodingResult marked_encoding(ByteBuffer rawtext) {
+		int bom = bom_encoding(rawtext);
+		if (bom != OTHER) {
+			return new EncodingResult(javaname[bom], EncodingResult.Tier.BOM);
+		}
+		String declared = xml_declared_encoding(rawtext);
+		if (declared != null) {
+			return new EncodingResult(declared,
+					EncodingResult.Tier.XML_DECLARATION);
+		}
+		if (is_ascii(rawtext)) {
+			return new EncodingResult(javaname[ASCII], EncodingResult.Tier.ASCII);
+		}
+		return null;
+	}
+
+	/**
+	 * Function : detect_sample Aruguments: sample of a file from read_sample,
+	 * confidence margin Returns : EncodingResult, or null if the sample does
+	 * not settle the encoding of the whole file Description: The byte order
+	 * mark and the XML declaration are at the start of the sample and
+	 * conclusive as in detect(byte[]). Otherwise the sample is trusted if it
+	 * is strictly valid UTF-8 with at least one multi-byte character. A pure
+	 * ASCII sample settles nothing: the unread parts may hold GBK or Big5
+	 * text, e.g. after a long ASCII header, so the whole file is scanned.
+	 * Failing that, the best statistical score must be above 50 and lead the
+	 * best score outside its own family (see family) by at least margin
+	 * points.
+	 */
+	EncodingResult detect_sample(byte[] rawsample, int margin) {
+		ByteBuffer sample = ByteBuffer.wrap(rawsample);
+		int bom = bom_encoding(sample);
+		if (bom != OTHER) {
+			return new EncodingResult(javaname[bom], EncodingResult.Tier.BOM);
+		}
+		String declared = xml_declared_encoding(sample);
+		if (declared != null) {
+			return new EncodingResult(declared,
+					EncodingResult.Tier.XML_DECLARATION);
+		}
+		if (is_ascii(sample)) {
+			return null;
+		}
+		if (is_strict_utf8(sample)) {
+			return new EncodingResult(javaname[UTF8], EncodingResult.Tier.SAMPLED);
+		}
+		int[] scores = fused_scores(sample);
+		int best = OTHER, runnerup = 0;
+		for (int index = 0; index < TOTALTYPES; index++) {
+			if (best == OTHER || scores[index] > scores[best]) {
+				best = index;
+			}
+		}
+		for (int index = 0; index < TOTALTYPES; index++) {
+			if (family(index) != family(best) && scores[index] > runnerup) {
+				runnerup = scores[index];
+			}
+		}
+		if (scores[best] > 50 && scores[best] - runnerup >= margin) {
+			return new EncodingResult(javaname[best], EncodingResult.Tier.SAMPLED);
+		}
+		return null;
+	}
+
+	/*
+	 * Function: family Argument: encoding Returns : the widest encoding that
+	 * decodes the same text as the argument; GB2312 and GBK are subsets of
+	 * GB18030 and EUC-KR of CP949, so their scores are not rivals
+	 */
+	static int family(int encoding) {
+		if (encoding == GB2312 || encoding == GBK) {
+			return GB18030;
+		}
+		if (encoding == EUC_KR) {
+			return CP949;
+		}
+		if (encoding == UTF8T || encoding == UTF8S) {
+			return UTF8;
+		}
+		if (encoding == UNICODET || encoding == UNICODES) {
+			return UNICODE;
+		}
+		if (encoding == ISO2022CN_CNS || encoding == ISO2022CN_GB) {
+			return ISO2022CN;
+		}
+		return encoding;
+	}
+
+	/*
+	 * Function: bom_encoding Argument: byte buffer Returns : UTF8 or UNICODE if
+	 * the buffer starts with the matching byte order mark, OTHER otherwise
+	 */
+	int bom_encoding(ByteBuffer rawtext) {
+		if (rawtext.limit() >= 3 && rawtext.get(0) == (byte) 0xEF
+				&& rawtext.get(1) == (byte) 0xBB && rawtext.get(2) == (byte) 0xBF) {
+			return UTF8;
+		}
+		if (rawtext.limit() >= 2
+				&& ((rawtext.get(0) == (byte) 0xFE && rawtext.get(1) == (byte) 0xFF) || // Big-endian
+				(rawtext.get(0) == (byte) 0xFF && rawtext.get(1) == (byte) 0xFE))) { // Little-endian
+			return UNICODE;
+		}
+		return OTHER;
+	}
+
+	/*
+	 * Function: xml_declared_encoding Argument: byte buffer Returns : canonical
+	 * Java charset name from <?xml ... encoding="..."?> at the start of the
+	 * buffer, or null if there is none or it is not supported. A declared UTF-8
+	 * is only believed when the bytes are valid UTF-8.
+	 */
+	String xml_declared_encoding(ByteBuffer rawtext) {
+		int rawtextlen = Math.min(rawtext.limit(), XML_DECLARATION_LIMIT);
+		if (!starts_with(rawtext, 0, "<?xml")) {
+			return null;
+		}
+		int end = 5;
+		while (end < rawtextlen - 1
+				&& !(rawtext.get(end) == '?' && rawtext.get(end + 1) == '>')) {
+			end++;
+		}
+		if (end >= rawtextlen - 1) {
+			return null;
+		}
+		for (int i = 5; i < end; i++) {
+			if (!starts_with(rawtext, i, "encoding")) {
+				continue;
+			}
+			int j = i + 8;
+			while (j < end && (rawtext.get(j) == ' ' || rawtext.get(j) == '=')) {
+				j++;
+			}
+			if (j >= end || (rawtext.get(j) != '"' && rawtext.get(j) != '\'')) {
+				return null;
+			}
+			byte quote = rawtext.get(j);
+			int k = j + 1;
+			while (k < end && rawtext.get(k) != quote) {
+				k++;
+			}
+			if (k >= end) {
+				return null;
+			}
+			Charset charset;
+			try {
+				charset = Charset.forName(ascii_string(rawtext, j + 1, k));
+			} catch (IllegalArgumentException e) {
+				// IllegalCharsetNameException, UnsupportedCharsetException
+				return null;
+			}
+			if (StandardCharsets.UTF_8.equals(charset)
+					&& !is_strict_utf8(rawtext)) {
+				return null;
+			}
+			return charset.name();
+		}
+		return null;
+	}
+
+	private static String ascii_string(ByteBuffer rawtext, int from, int to) {
+		StringBuilder sb = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			sb.append((char) (rawtext.get(i) & 0x7F));
+		}
+		return sb.toString();
+	}
+
+	private static boolean starts_with(ByteBuffer rawtext, int offset, String ascii) {
+		if (offset + ascii.length() > rawtext.limit()) {
+			return false;
+		}
+		for (int i = 0; i < ascii.length(); i++) {
+			if (rawtext.get(offset + i) != ascii.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Function: is_ascii Argument: byte buffer Returns : true if every byte is
+	 * 7-bit and there is no ESC, which would make it ISO-2022
+	 */
+	boolean is_ascii(ByteBuffer rawtext) {
+		int i = 0, rawtextlen = rawtext.limit();
+		while ((i = AsciiRuns.plain_end(rawtext, i, rawtextlen)) < rawtextlen) {
+			// Stopped at a high byte, ESC or a '~', which is fine here
+			if (rawtext.get(i) != '~') {
+				return false;
+			}
+			i++;
+		}
+		return true;
+	}
+
+	/*
+	 * Function: is_strict_utf8 Argument: byte buffer Returns : true if the
+	 * buffer is well-formed UTF-8 (RFC 3629: no overlong forms, surrogates or
+	 * code points above U+10FFFF) and has at least one multi-byte sequence
+	 */
+	boolean is_strict_utf8(ByteBuffer rawtext) {
+		int i = 0, n, lead, next;
+		int rawtextlen = rawtext.limit();
+		boolean multibyte = false;
+		while (i < rawtextlen) {
+			lead = rawtext.get(i) & 0xFF;
+			if (lead < 0x80) {
+				i = AsciiRuns.ascii_end(rawtext, i + 1, rawtextlen);
+				continue;
+			}
+			if (0xC2 <= lead && lead <= 0xDF) {
+				n = 1;
+			} else if (0xE0 <= lead && lead <= 0xEF) {
+				n = 2;
+			} else if (0xF0 <= lead && lead <= 0xF4) {
+				n = 3;
+			} else {
+				return false;
+			}
+			if (i + n >= rawtextlen) {
+				return false;
+			}
+			next = rawtext.get(i + 1) & 0xFF;
+			if ((lead == 0xE0 && next < 0xA0) || (lead == 0xED && next > 0x9F)
+					|| (lead == 0xF0 && next < 0x90)
+					|| (lead == 0xF4 && next > 0x8F)) {
+				return false;
+			}
+			for (int k = 1; k <= n; k++) {
+				if ((rawtext.get(i + k) & 0xC0) != 0x80) {
+					return false;
+				}
+			}
+			multibyte = true;
+			i += n + 1;
+		}
+		return multibyte;
+	}
+
+	/*
+	 * Function: is_strict Arguments: byte buffer, charset Returns : true if the
+	 * whole buffer decodes in charset without malformed or unmappable input.
+	 * UTF-8 is checked by is_strict_utf8, which also rejects what Java's
+	 * decoder replaces, and accepts a buffer without any high byte.
+	 */
+	boolean is_strict(ByteBuffer rawtext, Charset charset) {
+		if (StandardCharsets.UTF_8.equals(charset)) {
+			return AsciiRuns.ascii_end(rawtext, 0, rawtext.limit()) == rawtext
+					.limit() || is_strict_utf8(rawtext);
+		}
+		CharsetDecoder decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		ByteBuffer in = rawtext.duplicate();
+		CharBuffer out = DECODE_BUFFER.get();
+		CoderResult result;
+		do {
+			out.clear();
+			result = decoder.decode(in, out, true);
+			if (result.isError()) {
+				return false;
+			}
+		} while (result.isOverflow());
+		do {
+			out.clear();
+			result = decoder.flush(out);
+		} while (result.isOverflow());
+		return !result.isError();
+	}
+}
@@ -0,0 +1,73 @@
+package com.kanzhun.resformat;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The encodings a code base is known to use. When restricted, detection does
+ * not score every encoding it knows: after the byte order mark, XML
+ * declaration and ASCII tiers it checks whether the file decodes strictly in
+ * each candidate, in the order given, and the first that does wins. A file
+ * that decodes in none of them is scored statistically as before and reported
+ * as unmatched, see
+ * {@link BytesReadTextCode#detect(java.nio.ByteBuffer, CandidateEncodings)}.
+ */
+public final class CandidateEncodings {
+
+	/** No restriction, every encoding the detector knows is scored */
+	public static final CandidateEncodings ALL = new CandidateEncodings(
+			Collections.<Charset> emptyList());
+
+	private final List<Charset> charsets;
+
+	private CandidateEncodings(List<Charset> charsets) {
+		this.charsets = charsets;
+	}
+
+	/**
+	 * @param names
+	 *            charset names as understood by Java, e.g. "UTF-8" and "GBK",
+	 *            most likely first; null or empty for {@link #ALL}
+	 * @throws IllegalArgumentException
+	 *             if a name is not a charset supported by this JVM
+	 */
+	public static CandidateEncodings of(Collection<String> names) {
+		if (names == null || names.isEmpty()) {
+			return ALL;
+		}
+		Set<Charset> charsets = new LinkedHashSet<>();
+		for (String name : names) {
+			try {
+				charsets.add(Charset.forName(name.trim()));
+			} catch (IllegalArgumentException e) {
+				// IllegalCharsetNameException, UnsupportedCharsetException
+				throw new IllegalArgumentException("Unsupported encoding \""
+						+ name + "\"", e);
+			}
+		}
+		return new CandidateEncodings(Collections
+				.unmodifiableList(new ArrayList<>(charsets)));
+	}
+
+	public boolean isRestricted() {
+		return !charsets.isEmpty();
+	}
+
+	/**
+	 * @return the candidates in the order they are tried, empty for
+	 *         {@link #ALL}
+	 */
+	public List<Charset> getCharsets() {
+		return charsets;
+	}
+
+	@Override
+	public String toString() {
+		return isRestricted() ? charsets.toString() : "all";
+	}
+}
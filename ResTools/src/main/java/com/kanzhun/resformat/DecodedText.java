@@ -0,0 +1,57 @@
+package com.kanzhun.resformat;
+
+import java.nio.CharBuffer;
+
+/**
+ * Contents of a file read by {@link ReadTextCode#readText(java.io.File)}: the
+ * raw bytes, their detected encoding and the text decoded with it, all from a
+ * single read.
+ */
+public final class DecodedText {
+
+	private final byte[] bytes;
+
+	private final EncodingResult encoding;
+
+	private final String text;
+
+	DecodedText(byte[] bytes, EncodingResult encoding, String text) {
+		this.bytes = bytes;
+		this.encoding = encoding;
+		this.text = text;
+	}
+
+	/**
+	 * @return the file as read from disk; not copied, so do not modify it
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	public EncodingResult getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * @return charset to write the text back with
+	 */
+	public String getCharsetName() {
+		return encoding.getCharsetName();
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return read-only view of the text, for matching without a copy
+	 */
+	public CharBuffer getCharBuffer() {
+		return CharBuffer.wrap(text);
+	}
+
+	@Override
+	public String toString() {
+		return bytes.length + " bytes, " + encoding;
+	}
+}
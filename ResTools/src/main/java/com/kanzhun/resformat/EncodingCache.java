@@ -0,0 +1,204 @@
+package com.kanzhun.resformat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Charset of every file detected so far, kept on disk between runs. An entry
+ * is keyed by the absolute path and only valid while the file still has the
+ * size and modification time it had when it was detected; with
+ * {@code verifyContent} the CRC32 of the contents has to match as well, which
+ * catches edits that keep size and mtime (coarse file system timestamps).
+ * Stale entries are dropped on lookup. Safe to use from many threads.
+ */
+public final class EncodingCache {
+
+	private static final String HEADER = "# resTools encoding cache v1";
+
+	private static final long NO_CRC = -1;
+
+	private static final class Entry {
+		final long size;
+		final long mtime;
+		final long crc;
+		final String charsetName;
+
+		Entry(long size, long mtime, long crc, String charsetName) {
+			this.size = size;
+			this.mtime = mtime;
+			this.crc = crc;
+			this.charsetName = charsetName;
+		}
+	}
+
+	private final File store;
+
+	private final boolean verifyContent;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private volatile boolean dirty;
+
+	private EncodingCache(File store, boolean verifyContent) {
+		this.store = store;
+		this.verifyContent = verifyContent;
+	}
+
+	/**
+	 * Loads the cache from {@code store}. A missing or unreadable store gives
+	 * an empty cache.
+	 *
+	 * @param store
+	 *            cache file, e.g. build/resTools/encoding-cache.txt
+	 * @param verifyContent
+	 *            also compare a CRC32 of the contents on every lookup
+	 */
+	public static EncodingCache open(File store, boolean verifyContent) {
+		EncodingCache cache = new EncodingCache(store, verifyContent);
+		if (store.isFile()) {
+			try {
+				cache.load();
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Error loading encoding cache " + store + ": "
+						+ e);
+				cache.entries.clear();
+			}
+		}
+		return cache;
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(store.toPath(),
+				StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// size, mtime, crc, charset, path; the path goes last as the
+				// only field that may itself hold a tab
+				String[] fields = line.split("\t", 5);
+				if (fields.length != 5) {
+					continue;
+				}
+				entries.put(fields[4], new Entry(Long.parseLong(fields[0]), Long
+						.parseLong(fields[1]), Long.parseLong(fields[2]),
+						fields[3]));
+			}
+		}
+	}
+
+	/**
+	 * @return cached charset of {@code file}, or null if it is unknown or the
+	 *         file changed since
+	 */
+	public String get(File file) {
+		String key = file.getAbsolutePath();
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.size != file.length() || entry.mtime != file.lastModified()
+				|| (verifyContent && entry.crc != crc(file))) {
+			entries.remove(key, entry);
+			dirty = true;
+			return null;
+		}
+		return entry.charsetName;
+	}
+
+	/**
+	 * Remembers {@code charsetName} for the current state of {@code file}.
+	 * Also to be called after writing a file in a known charset, so that the
+	 * new size and mtime do not cost another detection.
+	 */
+	public void put(File file, String charsetName) {
+		long crc = verifyContent ? crc(file) : NO_CRC;
+		entries.put(file.getAbsolutePath(), new Entry(file.length(),
+				file.lastModified(), crc, charsetName));
+		dirty = true;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Writes the cache back to its store if anything changed, dropping
+	 * entries of files that no longer exist. The store is replaced at once,
+	 * so an interrupted build never leaves a half written cache.
+	 */
+	public void save() throws IOException {
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			if (!new File(it.next().getKey()).isFile()) {
+				it.remove();
+				dirty = true;
+			}
+		}
+		if (!dirty) {
+			return;
+		}
+		File dir = store.getAbsoluteFile().getParentFile();
+		Files.createDirectories(dir.toPath());
+		File tmp = File.createTempFile(store.getName(), ".tmp", dir);
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(),
+					StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					Entry entry = e.getValue();
+					writer.write(entry.size + "\t" + entry.mtime + "\t"
+							+ entry.crc + "\t" + entry.charsetName + "\t"
+							+ e.getKey());
+					writer.newLine();
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), store.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), store.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			dirty = false;
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private static long crc(File file) {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = new FileInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			// Never matches a stored CRC, so the file is detected again
+			return NO_CRC;
+		}
+		return crc.getValue();
+	}
+
+	@Override
+	public String toString() {
+		return store + " (" + entries.size() + " entries"
+				+ (verifyContent ? ", crc" : "") + ")";
+	}
+}
@@ -0,0 +1,198 @@
+package com.kanzhun.resformat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What {@link EncodingNormalizer} did to each file: the charset the file is
+ * in now and the one it was detected in, which differ for files it
+ * transcoded. While a manifest is set on {@link ReadTextCode} its charsets
+ * are trusted without detection (tier MANIFEST), for as long as a file keeps
+ * the size and modification time recorded here. Unlike the
+ * {@link EncodingCache} it is sorted by path and meant to be read, e.g. to
+ * review a normalisation before committing it. Safe to use from many
+ * threads.
+ */
+public final class EncodingManifest {
+
+	private static final String HEADER = "# resTools encoding manifest v1";
+
+	private static final class Entry {
+		final long size;
+		final long mtime;
+		final String charsetName;
+		final String detectedName;
+
+		Entry(long size, long mtime, String charsetName, String detectedName) {
+			this.size = size;
+			this.mtime = mtime;
+			this.charsetName = charsetName;
+			this.detectedName = detectedName;
+		}
+	}
+
+	private final File store;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private volatile boolean dirty;
+
+	private EncodingManifest(File store) {
+		this.store = store;
+	}
+
+	/**
+	 * Loads the manifest from {@code store}. A missing or unreadable store
+	 * gives an empty manifest.
+	 *
+	 * @param store
+	 *            manifest file, e.g. build/resTools/encoding-manifest.txt
+	 */
+	public static EncodingManifest open(File store) {
+		EncodingManifest manifest = new EncodingManifest(store);
+		if (store.isFile()) {
+			try {
+				manifest.load();
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Error loading encoding manifest " + store
+						+ ": " + e);
+				manifest.entries.clear();
+			}
+		}
+		return manifest;
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(store.toPath(),
+				StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				// size, mtime, charset, detected charset, path
+				String[] fields = line.split("\t", 5);
+				if (fields.length != 5) {
+					continue;
+				}
+				entries.put(fields[4], new Entry(Long.parseLong(fields[0]), Long
+						.parseLong(fields[1]), fields[2], fields[3]));
+			}
+		}
+	}
+
+	/**
+	 * @return charset {@code file} is in, or null if it is not in the
+	 *         manifest or changed since
+	 */
+	public String get(File file) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		if (entry == null || entry.size != file.length()
+				|| entry.mtime != file.lastModified()) {
+			return null;
+		}
+		return entry.charsetName;
+	}
+
+	/**
+	 * @return charset {@code file} was detected in before it was normalised,
+	 *         or null if it is not in the manifest
+	 */
+	public String getDetected(File file) {
+		Entry entry = entries.get(file.getAbsolutePath());
+		return entry != null ? entry.detectedName : null;
+	}
+
+	/**
+	 * Records the current state of {@code file}.
+	 *
+	 * @param charsetName
+	 *            charset the file is in now
+	 * @param detectedName
+	 *            charset it was detected in
+	 */
+	public void put(File file, String charsetName, String detectedName) {
+		entries.put(file.getAbsolutePath(), new Entry(file.length(),
+				file.lastModified(), charsetName, detectedName));
+		dirty = true;
+	}
+
+	/**
+	 * To be called after {@code file} was rewritten in {@code charsetName},
+	 * so its entry stays valid. Files not in the manifest are left out.
+	 */
+	public void update(File file, String charsetName) {
+		String key = file.getAbsolutePath();
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			entries.put(key, new Entry(file.length(), file.lastModified(),
+					charsetName, entry.detectedName));
+			dirty = true;
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Writes the manifest back to its store if anything changed, dropping
+	 * entries of files that no longer exist. The store is replaced at once.
+	 */
+	public void save() throws IOException {
+		Iterator<String> it = entries.keySet().iterator();
+		while (it.hasNext()) {
+			if (!new File(it.next()).isFile()) {
+				it.remove();
+				dirty = true;
+			}
+		}
+		if (!dirty) {
+			return;
+		}
+		File dir = store.getAbsoluteFile().getParentFile();
+		Files.createDirectories(dir.toPath());
+		File tmp = File.createTempFile(store.getName(), ".tmp", dir);
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(),
+					StandardCharsets.UTF_8)) {
+				writer.write(HEADER);
+				writer.newLine();
+				for (Map.Entry<String, Entry> e : new TreeMap<>(entries)
+						.entrySet()) {
+					Entry entry = e.getValue();
+					writer.write(entry.size + "\t" + entry.mtime + "\t"
+							+ entry.charsetName + "\t" + entry.detectedName
+							+ "\t" + e.getKey());
+					writer.newLine();
+				}
+			}
+			try {
+				Files.move(tmp.toPath(), store.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), store.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			dirty = false;
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return store + " (" + entries.size() + " entries)";
+	}
+}
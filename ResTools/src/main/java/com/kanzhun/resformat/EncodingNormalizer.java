@@ -0,0 +1,243 @@
+package com.kanzhun.resformat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects the encoding of many files once, in parallel, optionally
+ * transcodes them to UTF-8, and records the outcome in an
+ * {@link EncodingManifest}. With that manifest set on {@link ReadTextCode},
+ * later runs read every recorded file without detecting it again.
+ * <p>
+ * A file is only transcoded if it decodes strictly in its detected charset,
+ * so a wrong statistical guess is reported instead of corrupting the file.
+ * Files whose XML declaration names another charset, and files that match
+ * none of the candidate encodings, are left as they are and reported too.
+ */
+public final class EncodingNormalizer {
+
+	/**
+	 * Outcome of {@link EncodingNormalizer#normalize}.
+	 */
+	public static final class Summary {
+
+		private final Map<String, Integer> detected;
+
+		private final List<File> transcoded;
+
+		private final Map<File, String> problems;
+
+		Summary(Map<String, Integer> detected, List<File> transcoded,
+				Map<File, String> problems) {
+			this.detected = detected;
+			this.transcoded = transcoded;
+			this.problems = problems;
+		}
+
+		/**
+		 * @return number of files per detected charset
+		 */
+		public Map<String, Integer> getDetected() {
+			return detected;
+		}
+
+		/**
+		 * @return files rewritten in UTF-8, sorted by path
+		 */
+		public List<File> getTranscoded() {
+			return transcoded;
+		}
+
+		/**
+		 * @return files left as they were although they are not UTF-8, with
+		 *         the reason, sorted by path
+		 */
+		public Map<File, String> getProblems() {
+			return problems;
+		}
+
+		@Override
+		public String toString() {
+			return "detected " + detected + ", transcoded "
+					+ transcoded.size() + ", problems " + problems.size();
+		}
+	}
+
+	private final BytesReadTextCode detector = new BytesReadTextCode();
+
+	private final EncodingManifest manifest;
+
+	private final boolean toUtf8;
+
+	private final Map<String, AtomicInteger> detected = new ConcurrentHashMap<>();
+
+	private final Map<File, Boolean> transcoded = new ConcurrentHashMap<>();
+
+	private final Map<File, String> problems = new ConcurrentHashMap<>();
+
+	private EncodingNormalizer(EncodingManifest manifest, boolean toUtf8) {
+		this.manifest = manifest;
+		this.toUtf8 = toUtf8;
+	}
+
+	/**
+	 * Detects, and with {@code toUtf8} transcodes, every file on
+	 * {@code executor} and records it in {@code manifest}; returns when all
+	 * are done. Detection goes through {@link ReadTextCode#readText(File)}, so
+	 * it uses the sampling, candidate encodings, cache and manifest set there.
+	 * The manifest is not saved.
+	 *
+	 * @param files
+	 *            files to normalise
+	 * @param toUtf8
+	 *            rewrite files in other charsets in UTF-8
+	 * @param manifest
+	 *            records the charset of every file
+	 * @param executor
+	 *            runs one task per file, e.g. a fixed pool of one thread per
+	 *            core
+	 */
+	public static Summary normalize(Collection<File> files, boolean toUtf8,
+			EncodingManifest manifest, Executor executor) {
+		final EncodingNormalizer normalizer = new EncodingNormalizer(manifest,
+				toUtf8);
+		List<CompletableFuture<Void>> tasks = new ArrayList<>(files.size());
+		for (final File file : files) {
+			tasks.add(CompletableFuture.runAsync(new Runnable() {
+				@Override
+				public void run() {
+					normalizer.normalize(file);
+				}
+			}, executor));
+		}
+		CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+				.join();
+		return normalizer.summary();
+	}
+
+	private void normalize(File file) {
+		DecodedText text;
+		try {
+			text = ReadTextCode.readText(file);
+		} catch (IOException e) {
+			problems.put(file, e.toString());
+			return;
+		}
+		EncodingResult result = text.getEncoding();
+		Charset charset = Charset.forName(result.getCharsetName());
+		String detectedName = charset.name();
+		if (result.getTier() == EncodingResult.Tier.MANIFEST) {
+			// Normalised before and unchanged since
+			String original = manifest.getDetected(file);
+			if (original != null) {
+				detectedName = original;
+			}
+			if (toUtf8 && !is_utf8_compatible(charset)) {
+				// Left as it was last time; detect again to know why
+				result = detector.detect(ByteBuffer.wrap(text.getBytes()),
+						ReadTextCode.getCandidateEncodings());
+				charset = Charset.forName(result.getCharsetName());
+			}
+		}
+		count(detectedName);
+		if (!toUtf8 || is_utf8_compatible(charset)) {
+			manifest.put(file, charset.name(), detectedName);
+			return;
+		}
+		if (result.getTier() == EncodingResult.Tier.XML_DECLARATION) {
+			problems.put(file, "declares " + charset.name()
+					+ ", change the XML declaration first");
+		} else if (result.getTier() == EncodingResult.Tier.UNMATCHED) {
+			problems.put(file, "matches none of the candidate encodings, "
+					+ "guessed " + charset.name());
+		} else {
+			try {
+				CharBuffer chars = charset.newDecoder()
+						.onMalformedInput(CodingErrorAction.REPORT)
+						.onUnmappableCharacter(CodingErrorAction.REPORT)
+						.decode(ByteBuffer.wrap(text.getBytes()));
+				write(file, StandardCharsets.UTF_8.encode(chars));
+				manifest.put(file, StandardCharsets.UTF_8.name(), detectedName);
+				ReadTextCode.fileWritten(file, StandardCharsets.UTF_8.name());
+				transcoded.put(file, Boolean.TRUE);
+				return;
+			} catch (CharacterCodingException e) {
+				problems.put(file, "not valid " + charset.name());
+			} catch (IOException e) {
+				problems.put(file, e.toString());
+			}
+		}
+		manifest.put(file, charset.name(), detectedName);
+	}
+
+	private void count(String charsetName) {
+		AtomicInteger count = detected.get(charsetName);
+		if (count == null) {
+			AtomicInteger first = new AtomicInteger();
+			count = detected.putIfAbsent(charsetName, first);
+			if (count == null) {
+				count = first;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	// UTF-8 and its subset US-ASCII read the same after transcoding
+	private static boolean is_utf8_compatible(Charset charset) {
+		return StandardCharsets.UTF_8.equals(charset)
+				|| StandardCharsets.US_ASCII.equals(charset);
+	}
+
+	// Replaces the file at once, so an interrupted build never leaves a half
+	// written source file
+	private static void write(File file, ByteBuffer content) throws IOException {
+		byte[] bytes = new byte[content.remaining()];
+		content.get(bytes);
+		File tmp = File.createTempFile(file.getName(), ".tmp", file
+				.getAbsoluteFile().getParentFile());
+		try {
+			Files.write(tmp.toPath(), bytes);
+			try {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), file.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+
+	private Summary summary() {
+		Map<String, Integer> counts = new TreeMap<>();
+		for (Map.Entry<String, AtomicInteger> e : detected.entrySet()) {
+			counts.put(e.getKey(), e.getValue().get());
+		}
+		List<File> files = new ArrayList<>(transcoded.keySet());
+		Collections.sort(files);
+		return new Summary(Collections.unmodifiableMap(counts),
+				Collections.unmodifiableList(files),
+				Collections.unmodifiableMap(new TreeMap<>(problems)));
+	}
+}
@@ -0,0 +1,66 @@
+package com.kanzhun.resformat;
+
+/**
+ * Result of a tiered encoding detection: the Java charset name to read the
+ * file with, and the tier of {@link BytesReadTextCode#detect(byte[])} that
+ * produced it.
+ */
+public final class EncodingResult {
+
+	/**
+	 * Detection tiers, cheapest first.
+	 */
+	public enum Tier {
+		/** Remembered from an earlier detection, see {@link EncodingCache} */
+		CACHE,
+		/** Recorded by {@link EncodingNormalizer}, see {@link EncodingManifest} */
+		MANIFEST,
+		/** Byte order mark at the start of the file */
+		BOM,
+		/** encoding="..." of the &lt;?xml ... ?&gt; declaration */
+		XML_DECLARATION,
+		/** Only 7-bit bytes and no ISO-2022 escapes */
+		ASCII,
+		/** Strictly valid UTF-8 */
+		UTF8,
+		/** Decodes strictly in a configured {@link CandidateEncodings} */
+		CANDIDATE,
+		/** Sample of a large file was conclusive, see {@link SamplingPolicy} */
+		SAMPLED,
+		/** Full statistical scoring over all candidate encodings */
+		STATISTICAL,
+		/**
+		 * Decodes in none of the configured {@link CandidateEncodings}; the
+		 * charset is the guess of full statistical scoring
+		 */
+		UNMATCHED
+	}
+
+	private final String charsetName;
+
+	private final Tier tier;
+
+	EncodingResult(String charsetName, Tier tier) {
+		this.charsetName = charsetName;
+		this.tier = tier;
+	}
+
+	/**
+	 * @return charset name as understood by Java, e.g. "UTF-8" or "GBK"
+	 */
+	public String getCharsetName() {
+		return charsetName;
+	}
+
+	/**
+	 * @return tier that produced this result
+	 */
+	public Tier getTier() {
+		return tier;
+	}
+
+	@Override
+	public String toString() {
+		return charsetName + " (" + tier + ")";
+	}
+}
@@ -0,0 +1,136 @@
+package com.kanzhun.resformat;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Character frequency tables for GB, GBK, Big5, EUC-TW, KR and JP used by
+ * {@link BytesReadTextCode}.
+ * <p>
+ * The tables are shipped as the class path resources freq_gb.bin (GB2312 and
+ * GBK), freq_big5.bin (Big5 and Big5+), freq_euc_tw.bin, freq_kr.bin and
+ * freq_jp.bin next to this class. Each family is loaded the first time one of
+ * its tables is asked for, so a build whose files never reach statistical
+ * scoring never loads any of them. Once loaded a table is never written, so
+ * any number of threads may read it concurrently.
+ * <p>
+ * Each table is one flat short[] in row-major order: the frequency of row r,
+ * column c is at {@code r * COLUMNS + c}, with the COLUMNS constant of that
+ * table. Frequencies are at most 600, so a short holds them, and a flat
+ * array needs a single bounds check per lookup instead of a row dereference
+ * plus two checks.
+ * <p>
+ * Resource format, all numbers big-endian: the int 0x46524551 ("FREQ"), a
+ * byte with the number of tables, then per table its rows and columns as
+ * unsigned shorts, the number of non-zero cells as unsigned short, and for
+ * each of those cells its index (row * columns + column) and frequency as
+ * unsigned shorts. Cells not listed are 0.
+ */
+final class FrequencyTables {
+
+	private static final int MAGIC = 0x46524551;
+
+	static final int GB_COLUMNS = 94;
+
+	static final int GBK_COLUMNS = 191;
+
+	static final int BIG5_COLUMNS = 158;
+
+	static final int BIG5PLUS_COLUMNS = 191;
+
+	static final int EUC_TW_COLUMNS = 94;
+
+	static final int KR_COLUMNS = 94;
+
+	static final int JP_COLUMNS = 94;
+
+	private FrequencyTables() {
+	}
+
+	/** GB2312, 94 x 94 */
+	static short[] gb() {
+		return Gb.TABLES[0];
+	}
+
+	/** GBK, 126 x 191 */
+	static short[] gbk() {
+		return Gb.TABLES[1];
+	}
+
+	/** Big5, 94 x 158 */
+	static short[] big5() {
+		return Big5.TABLES[0];
+	}
+
+	/** Big5+, 126 x 191 */
+	static short[] big5plus() {
+		return Big5.TABLES[1];
+	}
+
+	/** EUC-TW (CNS 11643 plane 1), 94 x 94 */
+	static short[] euc_tw() {
+		return EucTw.TABLES[0];
+	}
+
+	/** KS C 5601, 94 x 94 */
+	static short[] kr() {
+		return Kr.TABLES[0];
+	}
+
+	/** JIS X 0208, 94 x 94 */
+	static short[] jp() {
+		return Jp.TABLES[0];
+	}
+
+	// One holder per family: class initialization loads it on first use and
+	// makes the loaded tables visible to all threads.
+	private static final class Gb {
+		static final short[][] TABLES = load("freq_gb.bin");
+	}
+
+	private static final class Big5 {
+		static final short[][] TABLES = load("freq_big5.bin");
+	}
+
+	private static final class EucTw {
+		static final short[][] TABLES = load("freq_euc_tw.bin");
+	}
+
+	private static final class Kr {
+		static final short[][] TABLES = load("freq_kr.bin");
+	}
+
+	private static final class Jp {
+		static final short[][] TABLES = load("freq_jp.bin");
+	}
+
+	private static short[][] load(String resource) {
+		InputStream stream = FrequencyTables.class.getResourceAsStream(resource);
+		if (stream == null) {
+			throw new IllegalStateException("Missing frequency table resource "
+					+ resource);
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				stream))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("bad header");
+			}
+			short[][] tables = new short[in.readUnsignedByte()][];
+			for (int t = 0; t < tables.length; t++) {
+				int rows = in.readUnsignedShort();
+				int columns = in.readUnsignedShort();
+				short[] table = new short[rows * columns];
+				for (int n = in.readUnsignedShort(); n > 0; n--) {
+					table[in.readUnsignedShort()] = (short) in.readUnsignedShort();
+				}
+				tables[t] = table;
+			}
+			return tables;
+		} catch (IOException e) {
+			throw new IllegalStateException("Corrupt frequency table resource "
+					+ resource, e);
+		}
+	}
+}
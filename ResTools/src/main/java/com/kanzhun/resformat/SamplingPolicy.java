@@ -0,0 +1,100 @@
+package com.kanzhun.resformat;
+
+/**
+ * How much of a file encoding detection may read. A file no larger than
+ * {@link #getSampleBytes()} is always scanned in full. A larger one is judged
+ * by a prefix plus a few windows spread evenly over the rest of the file, and
+ * only scanned in full when that sample is ambiguous, see
+ * {@link BytesReadTextCode#detect(java.io.File, SamplingPolicy)}.
+ */
+public final class SamplingPolicy {
+
+	/** Always read and score the whole file */
+	public static final SamplingPolicy FULL_SCAN = new SamplingPolicy(0, 0, 0, 0);
+
+	/** 64 KiB prefix and four 16 KiB windows, at most 128 KiB per file */
+	public static final SamplingPolicy DEFAULT = new SamplingPolicy(64 * 1024,
+			4, 16 * 1024, 10);
+
+	private final int prefixBytes;
+
+	private final int windowCount;
+
+	private final int windowBytes;
+
+	private final int confidenceMargin;
+
+	/**
+	 * @param prefixBytes
+	 *            bytes read from the start of the file, 0 to disable sampling
+	 * @param windowCount
+	 *            number of windows after the prefix
+	 * @param windowBytes
+	 *            bytes read per window
+	 * @param confidenceMargin
+	 *            score points (0 - 100) the best encoding of the sample must
+	 *            lead every unrelated encoding by to be trusted
+	 */
+	public SamplingPolicy(int prefixBytes, int windowCount, int windowBytes,
+			int confidenceMargin) {
+		if (prefixBytes < 0 || windowCount < 0 || windowBytes < 0
+				|| confidenceMargin < 0) {
+			throw new IllegalArgumentException("negative sampling parameter");
+		}
+		if ((long) prefixBytes + (long) windowCount * windowBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("sample larger than 2 GiB");
+		}
+		this.prefixBytes = prefixBytes;
+		this.windowCount = windowCount;
+		this.windowBytes = windowBytes;
+		this.confidenceMargin = confidenceMargin;
+	}
+
+	/**
+	 * Default windows and margin with another prefix size.
+	 *
+	 * @param prefixBytes
+	 *            bytes read from the start of the file, 0 to disable sampling
+	 */
+	public static SamplingPolicy ofPrefix(int prefixBytes) {
+		if (prefixBytes == 0) {
+			return FULL_SCAN;
+		}
+		return new SamplingPolicy(prefixBytes, DEFAULT.windowCount,
+				DEFAULT.windowBytes, DEFAULT.confidenceMargin);
+	}
+
+	public boolean isSampling() {
+		return prefixBytes > 0;
+	}
+
+	public int getPrefixBytes() {
+		return prefixBytes;
+	}
+
+	public int getWindowCount() {
+		return windowCount;
+	}
+
+	public int getWindowBytes() {
+		return windowBytes;
+	}
+
+	public int getConfidenceMargin() {
+		return confidenceMargin;
+	}
+
+	/**
+	 * @return upper bound of the bytes read per file while sampling
+	 */
+	public int getSampleBytes() {
+		return prefixBytes + windowCount * windowBytes;
+	}
+
+	@Override
+	public String toString() {
+		return isSampling() ? "prefix " + prefixBytes + ", " + windowCount
+				+ " x " + windowBytes + ", margin " + confidenceMargin
+				: "full scan";
+	}
+}
@@ -1,12 +1,16 @@
 package findunusedresources;
 
+import com.kanzhun.resformat.DecodedText;
+import com.kanzhun.resformat.ReadTextCode;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -14,6 +18,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -53,10 +61,27 @@ public class FindUnusedResources {
     private static final Map<String, Integer> mTotalRemovedMap = new HashMap<>();//todo 干哈的，看着没用到
     private static String TMP_FIND_UNUSED_RESOURCES = "/tmp/FindUnusedResources/";
     private static long mLastUpdateMs;  //每隔400ms更新下状态
+    private static boolean mIsAnyMatch;  //上次更新状态后是否有匹配
     private static String mRootPath;//src文件夹路径
     //endregion
 
     public static void main(String[] args) {
+        // 搜索引用时各文件并行读取和匹配，每核一个线程
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            run(args, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 与 main 相同，搜索引用时各文件的读取和匹配提交到 executor
+     *
+     * @param args     同 main
+     * @param executor 由调用者创建和关闭
+     */
+    public static void run(String[] args, Executor executor) {
         mStringMap.clear();
         mDimenMap.clear();
         mColorMap.clear();
@@ -121,7 +146,7 @@ public class FindUnusedResources {
             System.out.println("\nPASS " + i);
 
             // search root directory for resource usage
-            int unused = findUnusedResources(root);
+            int unused = findUnusedResources(root, executor);
             if (unused == 0) {
                 System.out.println("findUnusedResources 0,break down");
                 break;
@@ -129,7 +154,7 @@ public class FindUnusedResources {
 
             // search any additional paths for resources
             for (String additionalPath : additionalSearchPaths) {
-                unused = findUnusedResources(additionalPath);
+                unused = findUnusedResources(additionalPath, executor);
                 if (unused == 0) {
                     System.out.println("findUnusedResources additional 0,break down");
                     break;
@@ -298,7 +323,8 @@ public class FindUnusedResources {
         boolean isJava = fileName.endsWith(".java") || fileName.endsWith(".kt");
         BufferedReader br = null;
         try {
-            br = new BufferedReader(new FileReader(file));
+            // 按检测到的编码读取，与替换资源名时相同
+            br = new BufferedReader(new StringReader(ReadTextCode.readText(file).getText()));
             while (true) {
                 String line = br.readLine();
                 if (line == null) {
@@ -460,14 +486,15 @@ public class FindUnusedResources {
      * main文件夹路径
      *
      * @param root - directory to search through
+     * @param executor - runs the search of each file
      * @return number of unused resources still remaining (targets to delete)
      */
-    private static int findUnusedResources(String root) {
+    private static int findUnusedResources(String root, Executor executor) {
         // search through AndroidManifext.xml
         searchFileForUse(new File(root + "/AndroidManifest.xml"));
 
         // search through all JAVA and XML files at <root>/../
-        searchDirForUse(new File(root + "/../"));
+        searchDirForUse(new File(root + "/../"), executor);
 
         // done searching
         System.out.println();
@@ -501,38 +528,56 @@ public class FindUnusedResources {
         return 0;
     }
 
-    private static void searchDirForUse(File dir) {
+    private static void searchDirForUse(File dir, Executor executor) {
         // now, look through all .java and .xml files to find uses
+        List<File> files = new ArrayList<>();
+        collectFilesForUse(dir, files);
+
+        // 各文件只读取索引好的资源表并累加引用计数(AtomicInteger)，可以并行
+        List<CompletableFuture<Void>> tasks = new ArrayList<>(files.size());
+        for (final File file : files) {
+            tasks.add(CompletableFuture.runAsync(new Runnable() {
+                @Override
+                public void run() {
+                    // System.out.println("searching: " + file);
+                    printProgress(searchFileForUse(file));
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void collectFilesForUse(File dir, List<File> files) {
         File[] fileArr = dir.listFiles();
         if (fileArr == null) {
             //System.out.println("searchDirForUse: no files: " + dir);
             return;
         }
-        boolean isAnyMatch = false;
         for (File file : fileArr) {
             if (file.isDirectory()) {
-                searchDirForUse(file);
+                collectFilesForUse(file, files);
             } else {
                 String filename = file.getName();
                 if (filename.endsWith(".xml") || filename.endsWith(".java") || filename.endsWith(".kt")) {
-                    // System.out.println("searching: " + file);
-                    boolean isMatch = searchFileForUse(file);
-                    if (isMatch) {
-                        isAnyMatch = true;
-                    }
-
-                    // print out some progress indicator
-                    long timeMs = System.currentTimeMillis();
-                    if (timeMs - mLastUpdateMs >= 400) {
-                        System.out.print(isAnyMatch ? "+" : ".");
-                        isAnyMatch = false;
-                        mLastUpdateMs = timeMs;
-                    }
+                    files.add(file);
                 }
             }
         }
     }
 
+    // print out some progress indicator
+    private static synchronized void printProgress(boolean isMatch) {
+        if (isMatch) {
+            mIsAnyMatch = true;
+        }
+        long timeMs = System.currentTimeMillis();
+        if (timeMs - mLastUpdateMs >= 400) {
+            System.out.print(mIsAnyMatch ? "+" : ".");
+            mIsAnyMatch = false;
+            mLastUpdateMs = timeMs;
+        }
+    }
+
 
     /*
      * ok
@@ -709,7 +754,7 @@ public class FindUnusedResources {
     private static void readFileContents(File file) {
         BufferedReader br = null;
         try {
-            br = new BufferedReader(new FileReader(file));
+            br = new BufferedReader(new StringReader(ReadTextCode.readText(file).getText()));
             while (true) {
                 String line = br.readLine();
                 if (line == null) {
@@ -864,7 +909,9 @@ public class FindUnusedResources {
         BufferedReader br = null;
         BufferedWriter bw = null;
         try {
-            br = new BufferedReader(new FileReader(file));
+            // 按检测到的编码读取，写回时编码不变
+            DecodedText decoded = ReadTextCode.readText(file);
+            br = new BufferedReader(new StringReader(decoded.getText()));
             while (true) {
                 String line = br.readLine();
                 if (line == null) {
@@ -935,9 +982,10 @@ public class FindUnusedResources {
 
             if (numLinesDeleted > 0 && sb.length() > 0) {
                 // replace file with filtered version
-                bw = new BufferedWriter(new FileWriter(file));
+                bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), decoded.getCharsetName()));
                 bw.write(sb.toString());
                 bw.close();
+                ReadTextCode.fileWritten(file, decoded.getCharsetName());
             }
 
         } catch (Exception e) {
@@ -0,0 +1,67 @@
+package com.github.better.restools.engine
+
+import org.junit.Test
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class FileTaskRunnerTest {
+
+    private static final List<File> FILES = (0..<40).collect { new File(String.format("/module/src/F%02d.java", it)) }
+
+    @Test
+    void resultsKeepTheInputOrder() {
+        [new FileTaskRunner(1), new FileTaskRunner(4), new FileTaskRunner(4, true, 2)].each { FileTaskRunner runner ->
+            List<String> results = runner.run("source folder", FILES) { File file ->
+                Thread.sleep(file.name.hashCode() & 3)
+                return file.name
+            }
+            assertEquals(FILES*.name, results)
+        }
+    }
+
+    @Test
+    void errorsOfAllFilesAreReportedTogether() {
+        [new FileTaskRunner(1), new FileTaskRunner(4), new FileTaskRunner(4, true, 2)].each { FileTaskRunner runner ->
+            Set<File> processed = ConcurrentHashMap.newKeySet()
+            List<File> failing = [FILES[31], FILES[3], FILES[17]]
+            try {
+                runner.run("res folder", FILES) { File file ->
+                    processed << file
+                    if (file in failing) {
+                        throw new IOException("cannot write ${file.name}")
+                    }
+                    return 1
+                }
+                fail()
+            } catch (RuntimeException e) {
+                assertEquals(FILES as Set, processed)       // one failure does not stop the others
+                List<String> lines = e.message.readLines()
+                assertEquals("res folder: 3 file(s) failed", lines[0])
+                assertEquals(failing.sort()*.path, lines.drop(1).collect { it.trim().split(": ")[0] })
+                assertEquals(3, e.suppressed.length)
+                assertTrue(e.suppressed.every { it instanceof IOException })
+                assertEquals(["cannot write F03.java", "cannot write F17.java", "cannot write F31.java"],
+                        e.suppressed*.message)
+            }
+        }
+    }
+
+    @Test
+    void maxOpenFilesLimitsConcurrentTasks() {
+        AtomicInteger running = new AtomicInteger()
+        AtomicInteger max = new AtomicInteger()
+        new FileTaskRunner(8, true, 3).run("source folder", FILES) { File file ->
+            int now = running.incrementAndGet()
+            max.accumulateAndGet(now) { a, b -> Math.max(a, b) }
+            Thread.sleep(5)
+            running.decrementAndGet()
+            return 0
+        }
+        assertTrue("max ${max.get()}", max.get() <= 3)
+    }
+}
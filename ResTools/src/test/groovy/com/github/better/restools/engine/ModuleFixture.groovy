@@ -0,0 +1,71 @@
+package com.github.better.restools.engine
+
+import com.github.better.restools.ResToolsConfiguration
+import com.github.better.restools.folder.LayoutReplace
+import com.github.better.restools.values.ValuesReplace
+
+/**
+ * A small module with layouts, strings, a manifest and sources referencing them, and the engine set up
+ * the way ResToolsPlugin does it
+ */
+class ModuleFixture {
+
+    final File dir
+
+    ModuleFixture(File dir) {
+        this.dir = dir
+        file("src/com/ex/Main.java", """package com.ex;
+class Main {
+    void f() { setContentView(R.layout.activity_main); int r = R.layout.item_row + R.string.app_name; }
+}
+""")
+        file("src/com/ex/Util.java", "package com.ex;\nclass Util { int n = 1; }\n")
+        file("res/layout/activity_main.xml", """<LinearLayout>
+    <include layout="@layout/item_row"/>
+    <TextView android:text="@string/app_name"/>
+</LinearLayout>
+""")
+        file("res/layout/item_row.xml", "<TextView android:text=\"@string/title\"/>\n")
+        file("res/values/strings.xml", """<resources>
+    <string name="app_name">App</string>
+    <string name="title">Title</string>
+</resources>
+""")
+        file("AndroidManifest.xml", "<manifest><application android:label=\"@string/app_name\"/></manifest>\n")
+    }
+
+    File file(String path, String content) {
+        File file = new File(dir, path)
+        file.parentFile.mkdirs()
+        file.setText(content, "UTF-8")
+        return file
+    }
+
+    ResToolsConfiguration config() {
+        ResToolsConfiguration config = new ResToolsConfiguration("lib_", "", "$dir/src", "$dir/res", "$dir/AndroidManifest.xml")
+        config.parallelism = 2
+        return config
+    }
+
+    RenameEngine engine(RenameJournal journal = null, RenamePlan applying = null, RenameState state = null) {
+        ResToolsConfiguration config = config()
+        RenameEngine engine = new RenameEngine(config, journal, applying, state)
+        new LayoutReplace(config).collectRules(engine)
+        new ValuesReplace(config).collectRules(engine, ValuesReplace.ALL_VALUES_TYPES)
+        return engine
+    }
+
+    /**
+     * @return relative path -> content of every file
+     */
+    Map<String, String> snapshot() {
+        Map<String, String> files = new TreeMap<>()
+        ["src", "res"].each { String sub ->
+            new File(dir, sub).eachFileRecurse(groovy.io.FileType.FILES) { File file ->
+                files.put(dir.toURI().relativize(file.toURI()).path, file.getText("UTF-8"))
+            }
+        }
+        files.put("AndroidManifest.xml", new File(dir, "AndroidManifest.xml").getText("UTF-8"))
+        return files
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.better.restools.engine
+
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+import java.nio.file.Files
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertFalse
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+
+class RenamePlanTest {
+
+    private File root
+
+    @Before
+    void setUp() {
+        root = Files.createTempDirectory("plan").toFile()
+    }
+
+    @After
+    void tearDown() {
+        root.deleteDir()
+    }
+
+    /**
+     * @return the module after ReplaceResName without a plan
+     */
+    private Map<String, String> renamedDirectly() {
+        ModuleFixture module = new ModuleFixture(new File(root, "direct"))
+        module.engine().run()
+        return module.snapshot()
+    }
+
+    private static RenamePlan saveAndLoad(RenamePlan plan, File store) {
+        plan.save(store)
+        return RenamePlan.load(store)
+    }
+
+    @Test
+    void planThenApplyMatchesRenamingDirectly() {
+        ModuleFixture module = new ModuleFixture(new File(root, "planned"))
+        Map<String, String> before = module.snapshot()
+        RenamePlan plan = module.engine().plan()
+        assertEquals(before, module.snapshot())
+        assertEquals([new File(module.dir, "src/com/ex/Main.java").absoluteFile], plan.getFiles(RenamePlan.SRC))
+        assertEquals(2, plan.moves.size())
+
+        RenamePlan loaded = saveAndLoad(plan, new File(root, "plan.txt"))
+        assertEquals(plan.toString(), loaded.toString())
+        assertEquals(plan.names, loaded.names)
+        module.engine(null, loaded).apply()
+
+        Map<String, String> after = module.snapshot()
+        assertEquals(renamedDirectly(), after)
+        assertTrue(after.containsKey("res/layout/lib_activity_main.xml"))
+        assertTrue(after.get("src/com/ex/Main.java").contains("R.layout.lib_activity_main"))
+    }
+
+    @Test
+    void planForAnotherConfigIsRejected() {
+        ModuleFixture module = new ModuleFixture(new File(root, "config"))
+        RenamePlan plan = module.engine().plan()
+        plan.save(new File(root, "plan.txt"))
+        String text = new File(root, "plan.txt").getText("UTF-8").replace("lib_", "other_")
+        new File(root, "plan.txt").setText(text, "UTF-8")
+        try {
+            module.engine(null, RenamePlan.load(new File(root, "plan.txt"))).apply()
+            fail()
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.message, expected.message.contains("another config"))
+        }
+    }
+
+    @Test
+    void stalePlanIsRejectedWithoutChangingFiles() {
+        ModuleFixture module = new ModuleFixture(new File(root, "stale"))
+        RenamePlan plan = saveAndLoad(module.engine().plan(), new File(root, "plan.txt"))
+        File main = new File(module.dir, "src/com/ex/Main.java")
+        main.setText(main.getText("UTF-8") + "// edited after planning\n", "UTF-8")
+        Map<String, String> before = module.snapshot()
+        try {
+            module.engine(null, plan).apply()
+            fail()
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.message, expected.message.contains(main.path))
+        }
+        assertEquals(before, module.snapshot())
+    }
+
+    /**
+     * A rename fails half way, the error is fixed and the plan applied again with the same journal: the
+     * renames already done are kept, the rest are done, and the result is the same as without the failure
+     */
+    @Test
+    void failedRenameResumesWithoutLosingRenamedFiles() {
+        ModuleFixture module = new ModuleFixture(new File(root, "resume"))
+        RenamePlan plan = saveAndLoad(module.engine().plan(), new File(root, "plan.txt"))
+        File journalDir = new File(root, "journal")
+        RenamePlan.Move blocked = plan.moves.last()
+        File obstacle = new File(blocked.to, "obstacle")     // a directory that is not empty cannot be replaced
+        obstacle.parentFile.mkdirs()
+        obstacle.text = "x"
+
+        RenameJournal journal = RenameJournal.open(journalDir)
+        try {
+            module.engine(journal, plan).apply()
+            fail()
+        } catch (IOException expected) {
+            assertTrue(expected.message, expected.message.contains(blocked.to.path))
+        } finally {
+            journal.close()
+        }
+        RenamePlan.Move done = plan.moves.first()
+        assertFalse(done.from.exists())
+        assertTrue(done.to.exists())
+
+        blocked.to.deleteDir()
+        journal = RenameJournal.open(journalDir)
+        assertTrue(journal.isResuming())
+        try {
+            module.engine(journal, plan).apply()
+        } finally {
+            journal.close()
+        }
+        assertEquals(renamedDirectly(), module.snapshot())
+    }
+
+    @Test
+    void finishedRenamesAreSkippedWithoutJournal() {
+        ModuleFixture module = new ModuleFixture(new File(root, "twice"))
+        File from = new File(module.dir, "res/layout/item_row.xml")
+        File to = new File(module.dir, "res/layout/lib_item_row.xml")
+        RenameEngine.moveFile("layout", from, to, null)
+        RenameEngine.moveFile("layout", from, to, null)
+        assertFalse(from.exists())
+        assertEquals("<TextView android:text=\"@string/title\"/>\n", to.getText("UTF-8"))
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.better.restools.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class ByteTextTest {
+
+    // Rules of ValuesReplace, DrawableReplace and SourceReferenceRule
+    private static final List<Pattern> RULES = Arrays.asList(
+            Pattern.compile("(<string\\s+name\\s*=\\s*[\\\"'])(\\w+)(\\s*.*[\\\"']\\s*>)"),
+            Pattern.compile("(R(\\s*?)\\.(\\s*?)string(\\s*?)\\.(\\s*?))(\\w+)"),
+            Pattern.compile("(@string/)(\\w+)"),
+            Pattern.compile("(<style\\s+name\\s*=\\s*\\\")(.+?\\\")(.*>)"),
+            Pattern.compile("(@style/)(.+?\\\")"),
+            Pattern.compile("(R(\\s*?)\\.(\\s*?)drawable(\\s*?)\\.(\\s*?))(\\w+)"),
+            Pattern.compile("(R\\s*?\\.\\s*?(string|drawable)\\s*?\\.\\s*?)(\\w+)"));
+
+    private static String text(String local) {
+        return "<?xml version=\"1.0\"?>\r\n<resources>\n"
+                + "    <string name=\"app_name\">" + local + "</string>\n"
+                + "    <string name='title' >" + local + " @string/app_name</string>\r"
+                + "    <style name=\"AppTheme." + local + "\" parent=\"@style/Base." + local + "\">\n"
+                + "    <!-- " + local + " R.string.in_comment -->\n"
+                + "</resources>\n"
+                + "// " + local + "\nint a = R . string . app_name; int b = R.drawable." + local + "_icon;\n"
+                + "String c = \"" + local + "\" + getString(R.string.title) + R.drawable.ic_" + local + "\n";
+    }
+
+    /**
+     * Every rule finds the same matches in the bytes as in the decoded text: same number, byte positions
+     * that decode to the same prefix, and groups that decode to the same text.
+     */
+    private static void assertParity(String text, Charset charset) {
+        byte[] bytes = text.getBytes(charset);
+        String decoded = new String(bytes, charset);
+        assertEquals(text, decoded);
+        assertTrue(charset.name(), ByteText.canMatch(charset));
+        CharSequence byteText = ByteText.textOf(bytes, charset);
+        assertTrue(byteText instanceof ByteText);
+        for (Pattern rule : RULES) {
+            Matcher chars = rule.matcher(decoded);
+            Matcher raw = rule.matcher(byteText);
+            int matches = 0;
+            while (chars.find()) {
+                assertTrue(rule.pattern(), raw.find());
+                for (int g = 0; g <= chars.groupCount(); g++) {
+                    if (chars.start(g) < 0) {
+                        assertEquals(-1, raw.start(g));
+                        continue;
+                    }
+                    String where = rule.pattern() + " group " + g;
+                    assertEquals(where, decoded.substring(0, chars.start(g)).getBytes(charset).length, raw.start(g));
+                    assertEquals(where, chars.group(g),
+                            new String(bytes, raw.start(g), raw.end(g) - raw.start(g), charset));
+                }
+                matches++;
+            }
+            assertFalse(rule.pattern(), raw.find());
+            assertTrue(rule.pattern(), matches > 0);
+        }
+    }
+
+    @Test
+    public void utf8MatchesLikeDecodedText() {
+        assertParity(text("\u8d44\u6e90\u540d\u79f0 \ud55c\uad6d\uc5b4 \ud83d\ude00"), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void eucKrMatchesLikeDecodedText() {
+        assertParity(text("\ud55c\uad6d\uc5b4 \ubb38\uc790\uc5f4 \uc774\ub984"), Charset.forName("EUC-KR"));
+    }
+
+    /**
+     * The second byte of a GBK character may be ASCII, e.g. 0x40 '@' in 0x81 0x40, so GBK is decoded
+     * before matching.
+     */
+    @Test
+    public void gbkIsDecoded() {
+        Charset gbk = Charset.forName("GBK");
+        assertFalse(ByteText.canMatch(gbk));
+        String local = "\u4e02\u8d44\u6e90\u540d\u79f0";
+        byte[] bytes = local.getBytes(gbk);
+        assertEquals(0x81, bytes[0] & 0xFF);
+        assertEquals('@', bytes[1]);
+        String text = text(local);
+        CharSequence decoded = ByteText.textOf(text.getBytes(gbk), gbk);
+        assertTrue(decoded instanceof String);
+        assertEquals(text, decoded);
+    }
+
+    @Test
+    public void nonAsciiBytesAreNotWordsOrLineEnds() {
+        byte[] bytes = "a\u00e9b\n".getBytes(StandardCharsets.UTF_8);
+        ByteText text = new ByteText(bytes);
+        assertEquals(5, text.length());
+        assertFalse(Pattern.compile("\\w{3}").matcher(text).find());
+        assertTrue(Pattern.compile("^a..b$", Pattern.MULTILINE).matcher(text).find());
+        assertEquals("\u00e9", new String(bytes, 1, 2, StandardCharsets.UTF_8));
+        assertEquals(text.toString().substring(1, 4), text.subSequence(1, 4).toString());
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.better.restools.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class FileIoExecutorTest {
+
+    private static final int TASKS = 64;
+
+    /**
+     * Runs tasks that each hold their file for a while
+     *
+     * @return the most tasks that ran at the same time
+     */
+    private static int maxConcurrent(FileIoExecutor executor) throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(TASKS);
+        try {
+            for (int i = 0; i < TASKS; i++) {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int now = running.incrementAndGet();
+                        while (true) {
+                            int seen = max.get();
+                            if (now <= seen || max.compareAndSet(seen, now)) {
+                                break;
+                            }
+                        }
+                        try {
+                            Thread.sleep(5);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        running.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        return max.get();
+    }
+
+    @Test
+    public void platformThreadsAreCappedByMaxOpenFiles() throws InterruptedException {
+        FileIoExecutor executor = FileIoExecutor.create(false, 16, 3);
+        assertEquals(3, executor.getConcurrency());
+        int max = maxConcurrent(executor);
+        assertTrue("max " + max, max <= 3);
+    }
+
+    /**
+     * One virtual thread per task where supported (JDK 21+), so only the open file permits limit them;
+     * platform threads otherwise
+     */
+    @Test
+    public void virtualThreadsAreCappedByMaxOpenFiles() throws InterruptedException {
+        FileIoExecutor executor = FileIoExecutor.create(true, 16, 4);
+        assertEquals(FileIoExecutor.isVirtualThreadSupported(), executor.isVirtual());
+        int max = maxConcurrent(executor);
+        assertTrue("max " + max, max <= 4);
+        if (executor.isVirtual()) {
+            assertEquals(4, max);
+        }
+    }
+
+    @Test
+    public void defaultCapApplies() {
+        FileIoExecutor executor = FileIoExecutor.create(false, FileIoExecutor.DEFAULT_MAX_OPEN_FILES + 10, 0);
+        try {
+            assertEquals(FileIoExecutor.DEFAULT_MAX_OPEN_FILES, executor.getConcurrency());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.better.restools.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A crash is simulated by closing the journal without {@link RenameJournal#finish()}: the journal and
+ * backups stay as an interrupted build leaves them.
+ */
+public class RenameJournalTest {
+
+    private static final List<String> CONFIG = Arrays.asList("prefix=lib_", "module=app");
+
+    private File root;
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("journal").toFile();
+        dir = new File(root, "build/resTools/rename-journal");
+    }
+
+    @After
+    public void tearDown() {
+        delete(root);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private File file(String name, String content) throws IOException {
+        File file = new File(root, name);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private RenameJournal start() throws IOException {
+        RenameJournal journal = RenameJournal.open(dir);
+        Map<String, Set<String>> plan = Collections.<String, Set<String>>singletonMap("string",
+                new LinkedHashSet<>(Arrays.asList("app_name", "title")));
+        journal.start(CONFIG, plan);
+        return journal;
+    }
+
+    // Same steps as RenameEngine: back up, write, record
+    private static void write(RenameJournal journal, File file, String content) throws IOException {
+        journal.beforeWrite(file, Files.readAllBytes(file.toPath()));
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        journal.written(file);
+    }
+
+    @Test
+    public void crashDuringWriteRestoresTheFileOnResume() throws IOException {
+        File done = file("src/A.java", "R.string.app_name");
+        File half = file("src/B.java", "R.string.title");
+        RenameJournal journal = start();
+        write(journal, done, "R.string.lib_app_name");
+        journal.beforeWrite(half, Files.readAllBytes(half.toPath()));
+        Files.write(half.toPath(), "R.str".getBytes(StandardCharsets.UTF_8));
+        journal.close();
+
+        journal = RenameJournal.open(dir);
+        assertTrue(journal.isResuming());
+        assertEquals(new LinkedHashSet<>(Arrays.asList("app_name", "title")), journal.getPlan().get("string"));
+        assertTrue(journal.isWritten(done));
+        assertFalse(journal.isWritten(half));
+        assertEquals("R.string.title", read(half));
+        journal.start(CONFIG, Collections.<String, Set<String>>emptyMap());
+        write(journal, half, "R.string.lib_title");
+        journal.finish();
+        journal.close();
+
+        journal = RenameJournal.open(dir);
+        assertFalse(journal.isResuming());
+        assertFalse(journal.isWritten(done));
+        journal.close();
+    }
+
+    @Test
+    public void crashAfterRenameBeforeRecordCountsAsMoved() throws IOException {
+        File from = file("res/layout/activity_main.xml", "<LinearLayout/>");
+        File to = new File(from.getParentFile(), "lib_activity_main.xml");
+        RenameJournal journal = start();
+        journal.beforeMove(from, to);
+        assertTrue(from.renameTo(to));
+        journal.close();
+
+        journal = RenameJournal.open(dir);
+        assertTrue(journal.isResuming());
+        assertTrue(journal.isMoved(to));
+        assertFalse(journal.isMoved(from));
+        journal.close();
+    }
+
+    @Test
+    public void resumeWithAnotherConfigIsRejected() throws IOException {
+        start().close();
+        RenameJournal journal = RenameJournal.open(dir);
+        try {
+            journal.start(Arrays.asList("prefix=other_", "module=app"), Collections.<String, Set<String>>emptyMap());
+            fail();
+        } catch (IllegalStateException expected) {
+            // RollbackResName or a new journal first
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void halfWrittenLastLineIsIgnored() throws IOException {
+        File file = file("src/A.java", "R.string.app_name");
+        RenameJournal journal = start();
+        write(journal, file, "R.string.lib_app_name");
+        journal.close();
+        try (OutputStream out = new FileOutputStream(new File(dir, "journal.txt"), true)) {
+            out.write("move\t0\t-1\t/tmp/x".getBytes(StandardCharsets.UTF_8));
+        }
+
+        journal = RenameJournal.open(dir);
+        assertTrue(journal.isResuming());
+        assertTrue(journal.isWritten(file));
+        write(journal, file("src/B.java", "R.string.title"), "R.string.lib_title");
+        journal.close();
+
+        journal = RenameJournal.open(dir);
+        assertTrue(journal.isWritten(new File(root, "src/B.java")));
+        journal.close();
+    }
+
+    @Test
+    public void rollbackAfterCrashRestoresWritesAndRenames() throws IOException {
+        File source = file("src/A.java", "R.string.app_name R.layout.activity_main");
+        File from = file("res/layout/activity_main.xml", "<LinearLayout/>");
+        File to = file("res/layout/lib_activity_main.xml", "<FrameLayout/>");     // overwritten by the rename
+        File other = file("res/layout/item.xml", "<View/>");
+        File otherTo = new File(other.getParentFile(), "lib_item.xml");
+        RenameJournal journal = start();
+        write(journal, source, "R.string.lib_app_name R.layout.activity_main");
+        write(journal, source, "R.string.lib_app_name R.layout.lib_activity_main");
+        int id = journal.beforeMove(from, to);
+        assertTrue(to.delete());
+        assertTrue(from.renameTo(to));
+        journal.moved(id);
+        journal.beforeMove(other, otherTo);
+        assertTrue(other.renameTo(otherTo));
+        journal.close();
+
+        assertEquals("1 files restored, 2 renames undone", RenameJournal.rollback(dir));
+        assertEquals("R.string.app_name R.layout.activity_main", read(source));
+        assertEquals("<LinearLayout/>", read(from));
+        assertEquals("<FrameLayout/>", read(to));
+        assertEquals("<View/>", read(other));
+        assertFalse(otherTo.exists());
+        assertFalse(dir.exists());
+        assertNull(RenameJournal.rollback(dir));
+    }
+
+    @Test
+    public void rollbackAfterFinishStillRestores() throws IOException {
+        byte[] original = "R.string.app_name".getBytes(StandardCharsets.UTF_8);
+        File file = file("src/A.java", "R.string.app_name");
+        RenameJournal journal = start();
+        write(journal, file, "R.string.lib_app_name");
+        journal.finish();
+        journal.close();
+
+        RenameJournal.rollback(dir);
+        assertArrayEquals(original, Files.readAllBytes(file.toPath()));
+    }
+}
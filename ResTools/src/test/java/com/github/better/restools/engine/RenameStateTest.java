@@ -0,0 +1,155 @@
+package com.github.better.restools.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenameStateTest {
+
+    private static final List<String> CONFIG = Arrays.asList("", "lib_", "/module/src", "/module/res");
+
+    private File root;
+
+    private File store;
+
+    private File main;
+
+    private File util;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("state").toFile();
+        store = new File(root, "build/resTools/rename-state.txt");
+        main = file("Main.java", "int a = R.layout.lib_activity_main + R.string.title;");
+        util = file("Util.java", "int n = 1;");
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : new File[]{main, util, store, store.getParentFile(), store.getParentFile().getParentFile(),
+                root}) {
+            file.delete();
+        }
+    }
+
+    private File file(String name, String content) throws IOException {
+        File file = new File(root, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static Map<String, List<String>> table(String... layouts) {
+        Map<String, List<String>> table = new LinkedHashMap<>();
+        table.put("0:ref:layout", Arrays.asList(layouts));
+        return table;
+    }
+
+    /**
+     * A run with the layouts renamed: every file processed and recorded
+     */
+    private void firstRun(String... layouts) throws IOException {
+        RenameState state = RenameState.open(store);
+        state.setTable(CONFIG, table(layouts));
+        assertFalse(state.isUnchanged(main, true, true));
+        assertFalse(state.isUnchanged(util, true, true));
+        state.done(main);
+        state.done(util);
+        state.save();
+    }
+
+    private RenameState nextRun(List<String> config, String... layouts) {
+        RenameState state = RenameState.open(store);
+        assertEquals(2, state.size());
+        state.setTable(config, table(layouts));
+        return state;
+    }
+
+    @Test
+    public void unchangedFilesAreSkipped() throws IOException {
+        firstRun("activity_main");
+        RenameState state = nextRun(CONFIG, "activity_main");
+        assertTrue(state.isUnchanged(main, true, true));
+        assertTrue(state.isUnchanged(util, true, true));
+    }
+
+    @Test
+    public void editedFileIsProcessedAgain() throws IOException {
+        firstRun("activity_main");
+        Files.write(main.toPath(), "int a = R.layout.activity_main;".getBytes(StandardCharsets.UTF_8));
+        RenameState state = nextRun(CONFIG, "activity_main");
+        assertFalse(state.isUnchanged(main, true, true));
+        assertTrue(state.isUnchanged(util, true, true));
+    }
+
+    @Test
+    public void touchedFileWithSameContentIsSkipped() throws IOException {
+        firstRun("activity_main");
+        assertTrue(main.setLastModified(main.lastModified() - 60000));
+        RenameState state = nextRun(CONFIG, "activity_main");
+        assertTrue(state.isUnchanged(main, true, true));
+    }
+
+    @Test
+    public void onlyFilesContainingAddedNamesAreProcessedAgain() throws IOException {
+        firstRun("activity_main");
+        RenameState state = nextRun(CONFIG, "activity_main", "title");
+        assertFalse(state.isUnchanged(main, true, true));
+        // the names cannot be searched as bytes in a file that is not ASCII compatible
+        assertFalse(state.isUnchanged(util, false, true));
+        assertTrue(state.isUnchanged(util, true, true));
+    }
+
+    @Test
+    public void removedNamesDoNotReprocessFiles() throws IOException {
+        firstRun("activity_main", "title");
+        RenameState state = nextRun(CONFIG, "activity_main");
+        assertTrue(state.isUnchanged(main, true, true));
+        assertTrue(state.isUnchanged(util, true, true));
+    }
+
+    @Test
+    public void changedConfigProcessesEveryFile() throws IOException {
+        firstRun("activity_main");
+        RenameState state = nextRun(Arrays.asList("", "other_", "/module/src", "/module/res"), "activity_main");
+        assertFalse(state.isUnchanged(main, true, true));
+        assertFalse(state.isUnchanged(util, true, true));
+    }
+
+    @Test
+    public void dryRunDoesNotRewriteTheState() throws IOException {
+        firstRun("activity_main");
+        byte[] saved = Files.readAllBytes(store.toPath());
+        RenameState state = nextRun(CONFIG, "activity_main", "item_row");
+        assertTrue(state.isUnchanged(util, true, false));
+        state.save();
+        assertArrayEquals(saved, Files.readAllBytes(store.toPath()));
+
+        state = nextRun(CONFIG, "activity_main", "item_row");
+        assertTrue(state.isUnchanged(util, true, true));
+        state.save();
+        assertFalse(Arrays.equals(saved, Files.readAllBytes(store.toPath())));
+    }
+
+    @Test
+    public void deletedFilesAreForgotten() throws IOException {
+        firstRun("activity_main");
+        assertTrue(util.delete());
+        RenameState state = RenameState.open(store);
+        state.save();
+        assertEquals(1, RenameState.open(store).size());
+    }
+}
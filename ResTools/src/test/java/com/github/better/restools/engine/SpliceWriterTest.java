@@ -0,0 +1,133 @@
+package com.github.better.restools.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpliceWriterTest {
+
+    private static final Pattern REFERENCE = Pattern.compile("(R\\.string\\.)(\\w+)");
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("splice", ".java");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    // Pieces of the original file, resource names at odd indexes; non-ASCII text is escaped so the
+    // source encoding does not matter
+    private static final String[] PARTS = {
+            "// \u8d44\u6e90\u540d \u4e2d\u6587\u6ce8\u91ca\r\nString a = getString(R.string.", "app_name",
+            ");\n\tString b = \"\u5e03\u5c40\u989c\u8272\" + getString(R.string.", "title",
+            ");\r// \u6df7\u5408\u884c\u5c3e \ud83d\ude00 emoji\r\nint c = R.string.", "app_name", ";\n"
+    };
+
+    private static byte[] encode(Charset charset, byte[] bom, String... parts) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(bom);
+        for (String part : parts) {
+            out.write(part.getBytes(charset));
+        }
+        return out.toByteArray();
+    }
+
+    private static String[] renamed(String prefix) {
+        String[] parts = PARTS.clone();
+        for (int i = 1; i < parts.length; i += 2) {
+            parts[i] = prefix + parts[i];
+        }
+        return parts;
+    }
+
+    private static SpliceWriter edits(CharSequence text, String prefix) {
+        SpliceWriter writer = new SpliceWriter();
+        Matcher m = REFERENCE.matcher(text);
+        while (m.find()) {
+            assertTrue(writer.add(m.start(2), m.end(2), prefix + m.group(2)));
+        }
+        return writer;
+    }
+
+    private byte[] splice(byte[] original, Charset charset, boolean spliced) throws IOException {
+        Files.write(file.toPath(), original);
+        String text = new String(original, charset);
+        SpliceWriter writer = edits(text, "lib_");
+        assertEquals(3, writer.size());
+        assertEquals(spliced, writer.write(file, original, text, charset));
+        return Files.readAllBytes(file.toPath());
+    }
+
+    @Test
+    public void utf8KeepsBomLineEndingsAndOtherBytes() throws IOException {
+        byte[] original = encode(StandardCharsets.UTF_8, UTF8_BOM, PARTS);
+        byte[] expected = encode(StandardCharsets.UTF_8, UTF8_BOM, renamed("lib_"));
+        assertArrayEquals(expected, splice(original, StandardCharsets.UTF_8, true));
+    }
+
+    @Test
+    public void gbkIsLocatedByStrictDecoding() throws IOException {
+        Charset gbk = Charset.forName("GBK");
+        String[] parts = PARTS.clone();
+        parts[4] = parts[4].replace("\ud83d\ude00 emoji", "");     // no emoji in GBK
+        byte[] original = encode(gbk, new byte[0], parts);
+        for (int i = 1; i < parts.length; i += 2) {
+            parts[i] = "lib_" + parts[i];
+        }
+        assertArrayEquals(encode(gbk, new byte[0], parts), splice(original, gbk, true));
+    }
+
+    @Test
+    public void byteTextEditsAreBytePositions() throws IOException {
+        byte[] original = encode(StandardCharsets.UTF_8, UTF8_BOM, PARTS);
+        Files.write(file.toPath(), original);
+        SpliceWriter writer = edits(new ByteText(original), "lib_");
+        assertTrue(writer.write(file, original, new ByteText(original), StandardCharsets.UTF_8));
+        assertArrayEquals(encode(StandardCharsets.UTF_8, UTF8_BOM, renamed("lib_")),
+                Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void nonAsciiReplacementFallsBackToEncodingTheText() throws IOException {
+        byte[] original = encode(StandardCharsets.UTF_8, new byte[0], PARTS);
+        Files.write(file.toPath(), original);
+        String text = new String(original, StandardCharsets.UTF_8);
+        SpliceWriter writer = edits(text, "\u5e93_");
+        assertFalse(writer.write(file, original, text, StandardCharsets.UTF_8));
+        assertArrayEquals(encode(StandardCharsets.UTF_8, new byte[0], renamed("\u5e93_")),
+                Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void overlappingEditsKeepTheFirst() {
+        SpliceWriter writer = new SpliceWriter();
+        assertTrue(writer.add(10, 20, "a"));
+        assertFalse(writer.add(15, 25, "b"));
+        assertFalse(writer.add(5, 11, "c"));
+        assertTrue(writer.add(20, 22, "d"));
+        assertTrue(writer.add(0, 10, "e"));
+        assertEquals("e" + "a" + "d" + "xyz",
+                writer.apply("0123456789" + "0123456789" + "01" + "xyz"));
+    }
+}
@@ -0,0 +1,136 @@
+package com.kanzhun.resformat;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * fused_scores must give exactly the scores of the per-encoding scorers it
+ * replaced ({@link ReferenceScorers}), for every encoding and every input.
+ */
+public class FusedScoresTest {
+
+	private static final String CHINESE = "\u8d44\u6e90\u540d\u79f0\u4e2d\u6587\u5b57\u7b26\u4e32\u7684"
+			+ "\u5e03\u5c40\u989c\u8272\u56fe\u7247\u52a8\u753b\u83dc\u5355\u4f60\u597d\u4e16\u754c";
+
+	private static final String TRADITIONAL = "\u8cc7\u6e90\u540d\u7a31\u4e2d\u6587\u5b57\u7b26\u4e32\u7684"
+			+ "\u4f48\u5c40\u984f\u8272\u5716\u7247\u52d5\u756b\u83dc\u55ae";
+
+	private static final String JAPANESE = "\u30ea\u30bd\u30fc\u30b9\u540d\u3092\u5909\u66f4\u3057\u307e\u3059"
+			+ "\u3053\u3093\u306b\u3061\u306f\u4e16\u754c\uff76\uff80\uff76\uff85";
+
+	private static final String KOREAN = "\ub9ac\uc18c\uc2a4 \uc774\ub984\uc744 \ubc14\uafc9\ub2c8\ub2e4 "
+			+ "\uc548\ub155\ud558\uc138\uc694 \uc138\uacc4";
+
+	private static final String[] CHARSETS = { "GB2312", "GBK", "GB18030", "Big5", "EUC-KR",
+			"x-windows-949", "EUC-JP", "Shift_JIS", "UTF-8", "ISO-2022-JP", "ISO-2022-KR", "UTF-16" };
+
+	private final BytesReadTextCode detector = new BytesReadTextCode();
+
+	private final ReferenceScorers reference = new ReferenceScorers();
+
+	private final Random random = new Random(20260418L);
+
+	@Test
+	public void encodedTextScoresMatchReferenceScorers() throws Exception {
+		for (byte[] text : encodedTexts()) {
+			assertSameScores(text);
+			// cut anywhere, also inside a multi-byte character
+			for (int i = 0; i < 20; i++) {
+				assertSameScores(Arrays.copyOf(text, 2 + random.nextInt(text.length - 1)));
+			}
+			// damaged bytes, so scorers disagree on where characters start
+			for (int i = 0; i < 20; i++) {
+				byte[] damaged = text.clone();
+				for (int j = random.nextInt(4); j >= 0; j--) {
+					damaged[random.nextInt(damaged.length)] = (byte) random.nextInt(256);
+				}
+				assertSameScores(damaged);
+			}
+		}
+	}
+
+	@Test
+	public void randomBytesScoreLikeReferenceScorers() {
+		// byte ranges that hit the lead/trail byte rules of the various encodings
+		int[][] ranges = { { 0, 256 }, { 0x80, 256 }, { 0xA1, 0xFF }, { 0x81, 0xA0 }, { 0x40, 0x7F },
+				{ 0x1B, 0x1C }, { 0x20, 0x7F } };
+		for (int n = 0; n < 4000; n++) {
+			byte[] bytes = new byte[2 + random.nextInt(300)];
+			for (int i = 0; i < bytes.length; i++) {
+				int[] range = ranges[random.nextInt(ranges.length)];
+				bytes[i] = (byte) (range[0] + random.nextInt(range[1] - range[0]));
+			}
+			assertSameScores(bytes);
+		}
+	}
+
+	@Test
+	public void escapeSequencesScoreLikeReferenceScorers() throws Exception {
+		String[] inputs = { "~{<:Ky2;S{~}", "plain ~{ no end", "~~ tilde ~}~{",
+				"\u001b$)C\u000e!!\u000f", "\u001b$)A\u000e!!\u000f", "\u001b$B$3$s\u001b(B", "\u001b$A",
+				"ab", "\u00ff\u00fe", "\u00fe\u00ff", "\u00ef\u00bb\u00bftext" };
+		for (String input : inputs) {
+			assertSameScores(input.getBytes("ISO-8859-1"));
+		}
+	}
+
+	private List<byte[]> encodedTexts() throws Exception {
+		List<byte[]> texts = new ArrayList<>();
+		for (String charset : CHARSETS) {
+			for (String text : new String[] { CHINESE, TRADITIONAL, JAPANESE, KOREAN }) {
+				Charset cs = Charset.forName(charset);
+				if (!cs.newEncoder().canEncode(text)) {
+					continue;
+				}
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				for (int i = 0; i < 30; i++) {
+					out.write(("// line " + i + " ").getBytes(cs));
+					out.write(text.substring(0, 1 + random.nextInt(text.length())).getBytes(cs));
+					out.write("\n".getBytes(cs));
+				}
+				texts.add(out.toByteArray());
+			}
+		}
+		return texts;
+	}
+
+	/**
+	 * Inputs the reference scorers could not score: hz_probability and
+	 * iso_2022_cn_probability read past the end of the array after a trailing
+	 * '~' or an unterminated escape and throw, fused_scores scores them
+	 */
+	private int unscorable;
+
+	private int compared;
+
+	@After
+	public void mostInputsWereCompared() {
+		assertTrue(compared + " compared, " + unscorable + " not scorable by the reference",
+				compared >= 5 * unscorable);
+	}
+
+	private void assertSameScores(byte[] bytes) {
+		int[] expected;
+		try {
+			expected = reference.scores(bytes);
+		} catch (ArrayIndexOutOfBoundsException e) {
+			unscorable++;
+			detector.fused_scores(ByteBuffer.wrap(bytes));
+			return;
+		}
+		compared++;
+		int[] actual = detector.fused_scores(ByteBuffer.wrap(bytes));
+		assertArrayEquals("scores of " + Arrays.toString(bytes), expected, actual);
+	}
+}
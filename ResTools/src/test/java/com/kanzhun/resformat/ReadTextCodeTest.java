@@ -0,0 +1,58 @@
+package com.kanzhun.resformat;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class ReadTextCodeTest {
+
+	// Common Chinese characters, escaped so the source encoding does not matter
+	private static final String CHINESE = "\u8d44\u6e90\u540d\u79f0\u4e2d\u6587\u5b57\u7b26\u4e32\u7684"
+			+ "\u5e03\u5c40\u989c\u8272\u56fe\u7247\u52a8\u753b\u83dc\u5355";
+
+	/**
+	 * A long ASCII header, GBK strings right after the sampled prefix and
+	 * ASCII again up to the end: every byte the sample reads is ASCII, so the
+	 * sample must not settle the encoding.
+	 */
+	@Test
+	public void asciiSampleOfGbkFileScansWholeFile() throws Exception {
+		SamplingPolicy policy = SamplingPolicy.DEFAULT;
+		Charset gbk = Charset.forName("GBK");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		while (out.size() < policy.getPrefixBytes() + 1024) {
+			out.write("// ascii header line of a generated source file\n".getBytes("US-ASCII"));
+		}
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			text.append("String s").append(i).append(" = \"").append(CHINESE).append("\";\n");
+		}
+		out.write(text.toString().getBytes(gbk));
+		while (out.size() < 600 * 1024) {
+			out.write("int ascii_only_field_in_the_rest_of_the_file = 0;\n".getBytes("US-ASCII"));
+		}
+		File file = File.createTempFile("gbk-tail", ".java");
+		try {
+			Files.write(file.toPath(), out.toByteArray());
+			BytesReadTextCode detector = new BytesReadTextCode();
+
+			byte[] sample = detector.read_sample(file, file.length(), policy);
+			assertNull(detector.detect_sample(sample, policy.getConfidenceMargin()));
+
+			EncodingResult result = detector.detect(file, policy);
+			assertNotEquals(EncodingResult.Tier.SAMPLED, result.getTier());
+			assertNotEquals("UTF-8", result.getCharsetName());
+			String decoded = new String(out.toByteArray(), result.getCharsetName());
+			assertEquals(true, decoded.contains(text));
+		} finally {
+			file.delete();
+		}
+	}
+}